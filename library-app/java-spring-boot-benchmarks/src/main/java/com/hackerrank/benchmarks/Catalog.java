@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.benchmarks;
+
+import com.hackerrank.Application;
+import com.hackerrank.dao.BookDao;
+import com.hackerrank.models.Library;
+import com.hackerrank.repositories.LibrariesRepository;
+import com.hackerrank.services.BooksService;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+final class Catalog {
+    private static final int SEED_CHUNK_SIZE = 100000;
+
+    private static final int LIBRARY_COUNT = 100;
+
+    private Catalog() {
+    }
+
+    /**
+     * Starts the application against a fresh in-memory H2 database and seeds it with {@code size} books
+     * spread over {@value #LIBRARY_COUNT} libraries.
+     */
+    static ConfigurableApplicationContext start(int size, boolean cacheEnabled) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+            .properties(
+                "spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "server.port=0",
+                "logging.level.root=WARN",
+                "library.cache.enabled=" + cacheEnabled,
+                "library.response-cache.enabled=" + cacheEnabled
+            )
+            .run();
+
+        LibrariesRepository librariesRepository = context.getBean(LibrariesRepository.class);
+        BooksService booksService = context.getBean(BooksService.class);
+
+        for (int i = 0; i < LIBRARY_COUNT; i++) {
+            Library library = new Library();
+            library.setName("library-" + i);
+            librariesRepository.save(library);
+        }
+
+        long firstLibraryId = librariesRepository.findAll().get(0).getId();
+
+        // one transaction per chunk keeps a 10M catalog from running as a single unit of work
+        for (int from = 0; from < size; from += SEED_CHUNK_SIZE) {
+            Iterator<BookDao> chunk = IntStream.range(from, Math.min(size, from + SEED_CHUNK_SIZE))
+                .mapToObj(i -> book(i, firstLibraryId + i % LIBRARY_COUNT))
+                .iterator();
+
+            booksService.createAll(chunk);
+        }
+
+        return context;
+    }
+
+    static String isbn(int i) {
+        return String.format("978%010d", i);
+    }
+
+    static BookDao book(int i, Long libraryId) {
+        BookDao book = new BookDao();
+        book.setIsbn(isbn(i));
+        book.setName("book-" + i);
+        book.setAuthorName("author-" + i % 1000);
+        book.setPublicationYear(1900 + i % 120);
+        book.setSellingPrice(10.0f + i % 90);
+        book.setLibraryId(libraryId);
+
+        return book;
+    }
+}
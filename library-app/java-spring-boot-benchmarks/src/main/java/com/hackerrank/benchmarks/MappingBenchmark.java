@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hackerrank.dao.BookDao;
+import com.hackerrank.models.Book;
+import com.hackerrank.models.Library;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Mapping between entities and DAOs and their JSON serialization, without a database.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+    @Param({"10", "1000"})
+    public int booksPerLibrary;
+
+    private ObjectMapper mapper;
+
+    private Book book;
+
+    private BookDao bookDao;
+
+    private Library library;
+
+    @Setup
+    public void setup() {
+        // same configuration as the mapper Spring Boot hands to the controllers
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+
+        library = new Library();
+        library.setId(1L);
+        library.setName("library-1");
+        library.setBooks(new HashSet<>());
+
+        for (int i = 0; i < booksPerLibrary; i++) {
+            Book member = new Book(Catalog.book(i, null));
+            member.setLibrary(library);
+            library.getBooks().add(member);
+        }
+
+        bookDao = Catalog.book(0, 1L);
+        book = new Book(bookDao);
+        book.setLibrary(library);
+    }
+
+    @Benchmark
+    public BookDao bookToDao() {
+        return new BookDao(book);
+    }
+
+    @Benchmark
+    public Book daoToBook() {
+        return new Book(bookDao);
+    }
+
+    @Benchmark
+    public byte[] serializeBookDao() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(bookDao);
+    }
+
+    @Benchmark
+    public byte[] serializeLibrary() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(library);
+    }
+}
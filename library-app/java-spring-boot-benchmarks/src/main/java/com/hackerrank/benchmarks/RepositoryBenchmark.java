@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.benchmarks;
+
+import com.hackerrank.models.Book;
+import com.hackerrank.repositories.BooksRepository;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+/**
+ * BooksRepository read paths against an in-memory H2 catalog.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Number of seeded books, larger catalogs are selected with {@code -p catalogSize=10000000}.
+     */
+    @Param({"1000", "100000"})
+    public int catalogSize;
+
+    @Param({"true", "false"})
+    public boolean cacheEnabled;
+
+    private ConfigurableApplicationContext context;
+
+    private BooksRepository booksRepository;
+
+    @Setup
+    public void setup() {
+        context = Catalog.start(catalogSize, cacheEnabled);
+        booksRepository = context.getBean(BooksRepository.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Book> findById() {
+        return booksRepository.findById(randomIsbn());
+    }
+
+    @Benchmark
+    public List<Book> findKeysetPage() {
+        return booksRepository.findByIsbnGreaterThanOrderByIsbnAsc(randomIsbn(), PageRequest.of(0, PAGE_SIZE));
+    }
+
+    /**
+     * Loads the whole catalog, as the unpaginated GET /books does, so it is only meaningful for small catalogs.
+     */
+    @Benchmark
+    public List<Book> findAll() {
+        return booksRepository.findAll();
+    }
+
+    private String randomIsbn() {
+        return Catalog.isbn(ThreadLocalRandom.current().nextInt(catalogSize));
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.hackerrank;
 
+import com.hackerrank.metrics.MeteredJpaRepositoryFactoryBean;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
@@ -25,8 +26,15 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
  * @author Abhimanyu Singh
  * @author abhimanyusingh@hackerrank.com
  */
-@ComponentScan("com.hackerrank.controllers")
-@EnableJpaRepositories("com.hackerrank.repositories")
+@ComponentScan({
+    "com.hackerrank.config",
+    "com.hackerrank.controllers",
+    "com.hackerrank.services"
+})
+@EnableJpaRepositories(
+    value = "com.hackerrank.repositories",
+    repositoryFactoryBeanClass = MeteredJpaRepositoryFactoryBean.class
+)
 @EntityScan("com.hackerrank.models")
 @SpringBootApplication
 public class Application {
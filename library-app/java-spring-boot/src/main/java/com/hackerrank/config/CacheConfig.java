@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.hackerrank.models.Book;
+import com.hackerrank.models.Library;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Caffeine-backed JCache regions for the Hibernate second-level cache, sized
+ * and expired from the library.cache.* properties.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Configuration
+public class CacheConfig {
+    @Value("${library.cache.book.max-size:100000}")
+    private long bookMaxSize;
+
+    @Value("${library.cache.book.ttl-seconds:600}")
+    private long bookTtlSeconds;
+
+    @Value("${library.cache.library.max-size:10000}")
+    private long libraryMaxSize;
+
+    @Value("${library.cache.library.ttl-seconds:600}")
+    private long libraryTtlSeconds;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        // a private URI per context, so restarted contexts never share regions
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+            .getCacheManager(URI.create("library-app:" + UUID.randomUUID()), getClass().getClassLoader());
+
+        cacheManager.createCache(Book.class.getName(), region(bookMaxSize, bookTtlSeconds));
+        cacheManager.createCache(Library.class.getName(), region(libraryMaxSize, libraryTtlSeconds));
+
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheManagerCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(long maxSize, long ttlSeconds) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+
+        configuration.setMaximumSize(OptionalLong.of(maxSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds)));
+        configuration.setStatisticsEnabled(true);
+
+        return configuration;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.config;
+
+import com.hackerrank.metrics.QueryBudgetFilter;
+import com.hackerrank.metrics.StatementCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Per-request SQL statement counting, budgeted by library.query-budget.max-statements.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.query-budget.enabled", matchIfMissing = true)
+public class QueryBudgetConfig {
+    @Value("${library.query-budget.max-statements:20}")
+    private int maxStatements;
+
+    @Bean
+    public HibernatePropertiesCustomizer statementCounterCustomizer() {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new StatementCounter());
+    }
+
+    @Bean
+    public QueryBudgetFilter queryBudgetFilter(MeterRegistry meterRegistry) {
+        return new QueryBudgetFilter(maxStatements, meterRegistry);
+    }
+}
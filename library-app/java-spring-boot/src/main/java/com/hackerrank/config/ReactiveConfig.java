@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hackerrank.reactive.BooksHandler;
+import com.hackerrank.reactive.JdbcScheduler;
+import com.hackerrank.reactive.LibrariesHandler;
+import com.hackerrank.repositories.BooksRepository;
+import com.hackerrank.repositories.LibrariesRepository;
+import com.hackerrank.services.BookResponseCache;
+import com.hackerrank.services.BookSearchIndex;
+import com.hackerrank.services.BookShards;
+import com.hackerrank.services.BooksService;
+import com.hackerrank.services.LibrariesService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import static org.springframework.web.reactive.function.server.RequestPredicates.DELETE;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RequestPredicates.PUT;
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * Functional WebFlux routes for the books and libraries contract, active
+ * when the reactive profile switches the application to a reactive web
+ * application. Netty serves every connection from a handful of event loop
+ * threads; blocking JPA calls run on the JdbcScheduler.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfig {
+    @Value("${library.reactive.jdbc-threads:${spring.datasource.hikari.maximum-pool-size:10}}")
+    private int jdbcThreads;
+
+    /**
+     * Netty rather than Tomcat, which is on the classpath for the servlet stack.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public JdbcScheduler jdbcScheduler(PlatformTransactionManager transactionManager) {
+        return new JdbcScheduler(jdbcThreads, transactionManager);
+    }
+
+    @Bean
+    public BooksHandler booksHandler(
+        BooksRepository booksRepository,
+        BooksService booksService,
+        BookShards bookShards,
+        BookResponseCache responseCache,
+        BookSearchIndex searchIndex,
+        ObjectMapper mapper,
+        JdbcScheduler jdbcScheduler
+    ) {
+        return new BooksHandler(
+            booksRepository,
+            booksService,
+            bookShards,
+            responseCache,
+            searchIndex,
+            mapper,
+            jdbcScheduler
+        );
+    }
+
+    @Bean
+    public LibrariesHandler librariesHandler(
+        LibrariesRepository librariesRepository,
+        LibrariesService librariesService,
+        BookResponseCache bookResponseCache,
+        JdbcScheduler jdbcScheduler
+    ) {
+        return new LibrariesHandler(librariesRepository, librariesService, bookResponseCache, jdbcScheduler);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> routes(BooksHandler books, LibrariesHandler libraries) {
+        return route(GET("/books"), books::index)
+            .andRoute(GET("/books/{isbn}"), books::show)
+            .andRoute(POST("/books").and(contentType(MediaType.APPLICATION_JSON)), books::create)
+            .andRoute(PUT("/books/{isbn}").and(contentType(MediaType.APPLICATION_JSON)), books::update)
+            .andRoute(DELETE("/books/{isbn}"), books::delete)
+            .andRoute(GET("/libraries"), libraries::index)
+            .andRoute(GET("/libraries/{id}"), libraries::show)
+            .andRoute(POST("/libraries").and(contentType(MediaType.APPLICATION_JSON)), libraries::create)
+            .andRoute(DELETE("/libraries/{id}"), libraries::delete);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.config;
+
+import com.hackerrank.datasource.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Book shards listed in library.shards.urls. Books are spread over the
+ * shards by a hash of their ISBN, see BookShards; libraries, the change log
+ * and everything else stay on the primary configured by spring.datasource.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.shards.urls")
+public class ShardConfig {
+    @Value("${library.shards.urls}")
+    private String[] urls;
+
+    @Value("${library.replicas.urls:}")
+    private String replicaUrls;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        if (!replicaUrls.isEmpty()) {
+            throw new IllegalStateException("library.shards.urls cannot be combined with library.replicas.urls");
+        }
+
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(ShardRoutingDataSource.PRIMARY);
+
+        return dataSource;
+    }
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(
+        HikariDataSource primaryDataSource,
+        DataSourceProperties properties,
+        MeterRegistry meterRegistry
+    ) {
+        Map<String, DataSource> shards = new LinkedHashMap<>();
+
+        for (String url : urls) {
+            HikariDataSource shard = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url.trim())
+                .build();
+            shard.setPoolName("shard-" + (shards.size() + 1));
+
+            if (primaryDataSource.getMaximumPoolSize() > 0) {
+                // unset until the primary starts, in which case both fall back to Hikari's default
+                shard.setMaximumPoolSize(primaryDataSource.getMaximumPoolSize());
+            }
+
+            shard.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+            shards.put(shard.getPoolName(), shard);
+        }
+
+        return new ShardRoutingDataSource(primaryDataSource, shards);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return shardRoutingDataSource;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer shardConstraintModeCustomizer() {
+        // a shard's books reference libraries that only exist on the primary
+        return properties -> properties.put(AvailableSettings.HBM2DDL_DEFAULT_CONSTRAINT_MODE, "NO_CONSTRAINT");
+    }
+}
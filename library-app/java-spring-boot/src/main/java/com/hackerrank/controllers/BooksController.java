@@ -15,132 +15,464 @@
  */
 package com.hackerrank.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.hackerrank.dao.BookBatchItemDao;
+import com.hackerrank.dao.BookBatchResultDao;
 import com.hackerrank.dao.BookDao;
+import com.hackerrank.dao.BookStatsDao;
+import com.hackerrank.dao.JobDao;
+import com.hackerrank.dao.PublicationYearStatsDao;
+import com.hackerrank.dao.VersionDao;
 import com.hackerrank.models.Book;
-import com.hackerrank.models.Library;
+import static com.hackerrank.repositories.BookSpecifications.authorNameIs;
+import static com.hackerrank.repositories.BookSpecifications.nameStartsWith;
+import static com.hackerrank.repositories.BookSpecifications.pricedBetween;
+import static com.hackerrank.repositories.BookSpecifications.publishedBetween;
 import com.hackerrank.repositories.BooksRepository;
-import com.hackerrank.repositories.LibrariesRepository;
+import com.hackerrank.services.BookResponseCache;
+import com.hackerrank.services.BookSearchIndex;
+import com.hackerrank.services.BookShards;
+import com.hackerrank.services.BookWrite;
+import com.hackerrank.services.BookWriteQueue;
+import com.hackerrank.services.BooksService;
+import com.hackerrank.services.JobsService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import static java.util.stream.Collectors.toList;
+import java.util.stream.Stream;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import static org.springframework.data.jpa.domain.Specification.where;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
 /**
  * @author Abhimanyu Singh
  * @author abhimanyusingh@hackerrank.com
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class BooksController {
+    private static final int EXPORT_BATCH_SIZE = 500;
+
+    private static final int DEFAULT_AUTOCOMPLETE_LIMIT = 10;
+
+    private static final int MAX_AUTOCOMPLETE_LIMIT = 50;
+
     @Autowired
     private BooksRepository booksRepository;
 
     @Autowired
-    private LibrariesRepository librariesRepository;
+    private BooksService booksService;
+
+    @Autowired
+    private BookShards bookShards;
+
+    @Autowired
+    private BookResponseCache responseCache;
+
+    @Autowired
+    private BookSearchIndex searchIndex;
 
+    @Autowired
+    private BookWriteQueue writeQueue;
+
+    @Autowired
+    private JobsService jobsService;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Transactional(readOnly = true)
     @RequestMapping(
         value = "/books",
         method = RequestMethod.GET,
         produces = "application/json"
     )
-    public ResponseEntity index() {
-        List<BookDao> books = booksRepository.findAll().stream().map(BookDao::new).collect(toList());
-        return ResponseEntity.status(HttpStatus.OK).body(books);
+    public ResponseEntity index(
+        @RequestParam(value = "limit", required = false) Integer limit,
+        @RequestParam(value = "after", required = false) String after
+    ) {
+        if (limit == null && after == null) {
+            List<BookDao> books = new ArrayList<>();
+            bookShards.readEach(() -> booksRepository.findAll().stream().map(BookDao::new).collect(toList()))
+                .forEach(books::addAll);
+            return ResponseEntity.status(HttpStatus.OK).body(books);
+        }
+
+        if (limit == null) {
+            limit = Paging.DEFAULT_PAGE_LIMIT;
+        }
+
+        if (limit < 1 || limit > Paging.MAX_PAGE_LIMIT) {
+            return ResponseEntity.status(400).build();
+        }
+
+        String afterIsbn = null;
+
+        if (after != null) {
+            afterIsbn = Paging.decodeCursor(after);
+
+            if (afterIsbn == null) {
+                return ResponseEntity.status(400).build();
+            }
+        }
+
+        // one extra row tells us whether a next page exists without a count query
+        Pageable pageable = PageRequest.of(0, limit + 1);
+        String from = afterIsbn;
+
+        // every shard's first rows past the cursor, the page is the lowest of them all
+        List<BookDao> page = Paging.merge(
+            bookShards.readEach(() -> (from == null
+                ? booksRepository.findAllByOrderByIsbnAsc(pageable)
+                : booksRepository.findByIsbnGreaterThanOrderByIsbnAsc(from, pageable)
+            ).stream().map(BookDao::new).collect(toList())),
+            Comparator.comparing(BookDao::getIsbn),
+            limit + 1
+        );
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK);
+
+        if (page.size() > limit) {
+            page = page.subList(0, limit);
+            response.header(Paging.NEXT_CURSOR_HEADER, Paging.encodeCursor(page.get(limit - 1).getIsbn()));
+        }
+
+        return response.body(page);
     }
 
+    @Transactional(readOnly = true)
     @RequestMapping(
-        value = "/books/{isbn}",
+        value = "/books/search",
         method = RequestMethod.GET,
         produces = "application/json"
     )
-    public ResponseEntity show(@PathVariable("isbn") String isbn) {
-        Book book = booksRepository.findById(isbn).orElse(null);
-
-        if (book == null) {
-            return ResponseEntity.status(404).build();
+    public ResponseEntity search(
+        @RequestParam(value = "author_name", required = false) String authorName,
+        @RequestParam(value = "name_prefix", required = false) String namePrefix,
+        @RequestParam(value = "min_publication_year", required = false) Integer minPublicationYear,
+        @RequestParam(value = "max_publication_year", required = false) Integer maxPublicationYear,
+        @RequestParam(value = "min_selling_price", required = false) Float minSellingPrice,
+        @RequestParam(value = "max_selling_price", required = false) Float maxSellingPrice,
+        @RequestParam(value = "page", required = false) Integer page,
+        @RequestParam(value = "size", required = false) Integer size
+    ) {
+        Pageable pageable = Paging.of(page, size, Sort.by("isbn"));
+
+        if (pageable == null) {
+            return ResponseEntity.status(400).build();
         }
 
-        return ResponseEntity.status(HttpStatus.OK).body(new BookDao(book));
+        Specification<Book> specification = where(authorNameIs(authorName))
+            .and(nameStartsWith(namePrefix))
+            .and(publishedBetween(minPublicationYear, maxPublicationYear))
+            .and(pricedBetween(minSellingPrice, maxSellingPrice));
+        Pageable shardPageable = Paging.perShard(pageable, bookShards.getShards().size());
+
+        Page<BookDao> books = Paging.merge(
+            bookShards.readEach(() -> booksRepository.findAll(specification, shardPageable).map(BookDao::new)),
+            pageable,
+            Paging.bookOrder(pageable.getSort())
+        );
+
+        return ResponseEntity.status(HttpStatus.OK)
+            .header(Paging.TOTAL_COUNT_HEADER, String.valueOf(books.getTotalElements()))
+            .body(books.getContent());
     }
 
+    @Transactional(readOnly = true)
     @RequestMapping(
-        value = "/books",
-        method = RequestMethod.POST,
-        consumes = "application/json"
+        value = "/books/stats",
+        method = RequestMethod.GET,
+        produces = "application/json"
     )
-    public ResponseEntity create(@RequestBody BookDao book) {
-        if (booksRepository.existsById(book.getIsbn())) {
-            return ResponseEntity.status(400).build();
+    public ResponseEntity stats() {
+        return ResponseEntity.status(HttpStatus.OK).body(new BookStatsDao(
+            PublicationYearStatsDao.combine(bookShards.readEach(booksRepository::findPublicationYearStats))
+        ));
+    }
+
+    @RequestMapping(
+        value = "/books/autocomplete",
+        method = RequestMethod.GET,
+        produces = "application/json"
+    )
+    public ResponseEntity autocomplete(
+        @RequestParam("q") String q,
+        @RequestParam(value = "limit", required = false) Integer limit
+    ) throws IOException {
+        if (limit == null) {
+            limit = DEFAULT_AUTOCOMPLETE_LIMIT;
         }
 
-        Book newBook = new Book(book);
-        Long libraryId = book.getLibraryId();
+        if (limit < 1 || limit > MAX_AUTOCOMPLETE_LIMIT) {
+            return ResponseEntity.status(400).build();
+        }
 
-        if (libraryId != null) {
-            Library library = librariesRepository.getOne(libraryId);
+        return ResponseEntity.status(HttpStatus.OK).body(searchIndex.search(q, limit));
+    }
 
-            if (library == null) {
-                return ResponseEntity.status(400).build();
+    @Transactional(readOnly = true)
+    @RequestMapping(
+        value = "/books/export",
+        method = RequestMethod.GET,
+        produces = "application/json"
+    )
+    public void export(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+
+            // one shard after another, so the array is written by a single thread at a time
+            for (String shard : bookShards.getShards()) {
+                bookShards.read(shard, () -> {
+                    export(generator);
+                    return null;
+                });
             }
 
-            library.addBook(newBook);
-            newBook.setLibrary(library);
-
-            librariesRepository.save(library);
+            generator.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+    }
 
-        booksRepository.save(newBook);
+    private void export(JsonGenerator generator) {
+        Session session = entityManager.unwrap(Session.class);
+        CacheMode cacheMode = session.getCacheMode();
+        // the exported rows are neither served from nor put into the second-level cache
+        session.setCacheMode(CacheMode.IGNORE);
 
-        return ResponseEntity.status(HttpStatus.CREATED).body(new BookDao(newBook));
+        try (Stream<Book> books = booksRepository.streamAll()) {
+            Iterator<Book> iterator = books.iterator();
+            int written = 0;
+
+            while (iterator.hasNext()) {
+                generator.writeObject(new BookDao(iterator.next()));
+
+                if (++written % EXPORT_BATCH_SIZE == 0) {
+                    // drop the rows already written so the persistence context stays bounded
+                    entityManager.clear();
+                    generator.flush();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            session.setCacheMode(cacheMode);
+        }
     }
 
+    @Transactional(readOnly = true)
     @RequestMapping(
         value = "/books/{isbn}",
-        method = RequestMethod.PUT,
-        consumes = "application/json"
+        method = RequestMethod.GET,
+        produces = "application/json"
     )
-    public ResponseEntity update(@PathVariable("isbn") String isbn, @RequestBody BookDao updatedBook) {
-        Book book = booksRepository.findById(isbn).orElse(null);
+    public ResponseEntity show(@PathVariable("isbn") String isbn, WebRequest request) {
+        String shard = bookShards.shardOf(isbn);
+        BookResponseCache.Entry cached = responseCache.isEnabled() ? responseCache.getIfPresent(isbn) : null;
+
+        if (cached == null && isConditional(request)) {
+            // revalidation only needs the version columns, the book is neither loaded nor serialized
+            VersionDao version = bookShards.read(shard, () -> booksRepository.findVersion(isbn));
+
+            if (version == null) {
+                return ResponseEntity.status(404).build();
+            }
+
+            if (request.checkNotModified(version.getEtag(), version.getLastModified())) {
+                return null;
+            }
+        }
+
+        if (cached == null && responseCache.isEnabled()) {
+            cached = responseCache.get(isbn, key -> bookShards.read(shard, () -> booksRepository.findById(key)
+                .map(book -> new BookResponseCache.Entry(serialize(new BookDao(book)), VersionDao.of(book)))
+                .orElse(null)
+            ));
+        }
+
+        if (cached != null) {
+            if (request.checkNotModified(cached.getEtag(), cached.getLastModified())) {
+                return null;
+            }
+
+            return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(cached.getBody());
+        }
+
+        Book book = bookShards.read(shard, () -> booksRepository.findById(isbn).orElse(null));
 
         if (book == null) {
             return ResponseEntity.status(404).build();
         }
 
-        book.setAuthorName(updatedBook.getAuthorName());
-        book.setName(updatedBook.getName());
-        book.setPublicationYear(updatedBook.getPublicationYear());
-        book.setSellingPrice(updatedBook.getSellingPrice());
+        VersionDao version = VersionDao.of(book);
 
-        Long library_id = updatedBook.getLibraryId();
+        if (request.checkNotModified(version.getEtag(), version.getLastModified())) {
+            return null;
+        }
 
-        if (library_id != null) {
-            Library library = librariesRepository.findById(library_id).orElse(null);
+        return ResponseEntity.status(HttpStatus.OK).body(new BookDao(book));
+    }
 
-            if (library == null) {
+    @RequestMapping(
+        value = "/books",
+        method = RequestMethod.POST,
+        consumes = "application/json"
+    )
+    public ResponseEntity create(
+        @RequestBody BookDao book,
+        @RequestParam(value = "async", defaultValue = "false") boolean async
+    ) {
+        if (async || writeQueue.isEnabled()) {
+            return enqueue(BookWrite.create(book), HttpStatus.CREATED, async);
+        }
+
+        Book newBook;
+
+        try {
+            newBook = booksService.create(book);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).build();
+        }
+
+        responseCache.invalidate(newBook.getIsbn());
+        searchIndex.refresh(Collections.singletonList(newBook.getIsbn()));
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(new BookDao(newBook));
+    }
+
+    @RequestMapping(
+        value = "/books/batch",
+        method = RequestMethod.POST,
+        consumes = {"application/json", "application/x-ndjson"},
+        produces = "application/json"
+    )
+    public ResponseEntity createAll(HttpServletRequest request) throws IOException {
+        // a top-level array is unwrapped by the iterator, so JSON arrays and NDJSON share one path
+        BookBatchResultDao result;
+
+        try (MappingIterator<BookDao> books = mapper.readerFor(BookDao.class).readValues(request.getInputStream())) {
+            result = booksService.createAll(books);
+        } catch (JsonProcessingException e) {
+            return ResponseEntity.status(400).build();
+        } catch (RuntimeException e) {
+            // the iterator wraps malformed entries found mid-stream in unchecked exceptions
+            if (e instanceof RuntimeJsonMappingException || e.getCause() instanceof JsonProcessingException) {
                 return ResponseEntity.status(400).build();
             }
 
-            Library existingLibrary = book.getLibrary();
+            throw e;
+        }
 
-            if (existingLibrary != null) {
-                existingLibrary.removeBook(book);
+        searchIndex.refresh(result.getItems().stream()
+            .filter(item -> item.getStatus() == HttpStatus.CREATED.value())
+            .map(BookBatchItemDao::getIsbn)
+            .collect(toList())
+        );
 
-                librariesRepository.save(existingLibrary);
-            }
+        return ResponseEntity.status(HttpStatus.OK).body(result);
+    }
 
-            library.addBook(book);
+    @RequestMapping(
+        value = "/books/batch",
+        method = RequestMethod.PUT,
+        consumes = "application/json",
+        produces = "application/json"
+    )
+    public ResponseEntity updateAll(@RequestBody List<BookDao> books) {
+        BookBatchResultDao result = booksService.updateAll(books);
+        List<String> isbns = books.stream().map(BookDao::getIsbn).filter(Objects::nonNull).collect(toList());
+        responseCache.invalidate(isbns);
+        searchIndex.refresh(isbns);
+
+        return ResponseEntity.status(HttpStatus.OK).body(result);
+    }
+
+    @RequestMapping(
+        value = "/books/batch",
+        method = RequestMethod.DELETE,
+        consumes = "application/json",
+        produces = "application/json"
+    )
+    public ResponseEntity destroyAll(@RequestBody List<String> isbns) {
+        BookBatchResultDao result = booksService.deleteAll(isbns);
+        responseCache.invalidate(isbns);
+        searchIndex.refresh(isbns);
 
-            librariesRepository.save(library);
+        return ResponseEntity.status(HttpStatus.OK).body(result);
+    }
 
-            book.setLibrary(library);
+    @RequestMapping(
+        value = "/books/{isbn}",
+        method = RequestMethod.PUT,
+        consumes = "application/json"
+    )
+    public ResponseEntity update(
+        @PathVariable("isbn") String isbn,
+        @RequestBody BookDao updatedBook,
+        @RequestParam(value = "async", defaultValue = "false") boolean async
+    ) {
+        if (async || writeQueue.isEnabled()) {
+            return enqueue(BookWrite.update(isbn, updatedBook), HttpStatus.OK, async);
         }
 
-        booksRepository.save(book);
+        Book book;
+
+        try {
+            book = booksService.update(isbn, updatedBook);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).build();
+        }
+
+        responseCache.invalidate(isbn);
+        searchIndex.refresh(Collections.singletonList(isbn));
 
         return ResponseEntity.status(HttpStatus.OK).body(new BookDao(book));
     }
@@ -150,22 +482,67 @@ public class BooksController {
         method = RequestMethod.DELETE
     )
     public ResponseEntity destroy(@PathVariable("isbn") String isbn) {
-        Book book = booksRepository.findById(isbn).orElse(null);
+        try {
+            booksService.delete(isbn);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).build();
+        }
 
-        if (book == null) {
-            return ResponseEntity.status(400).build();
+        responseCache.invalidate(isbn);
+        searchIndex.refresh(Collections.singletonList(isbn));
+
+        return ResponseEntity.status(HttpStatus.OK).build();
+    }
+
+    /**
+     * Hands a write to the group committer. Fire-and-forget writes answer 202
+     * with a job to poll, the others wait for their group to commit.
+     */
+    private ResponseEntity enqueue(BookWrite write, HttpStatus status, boolean async) {
+        CompletableFuture<BookDao> completion;
+
+        try {
+            completion = writeQueue.submit(write);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).build();
         }
 
-        Library library = book.getLibrary();
+        if (async) {
+            JobDao job = jobsService.track(write.isCreate() ? "book-creation" : "book-update", completion);
 
-        if (library != null) {
-            library.removeBook(book);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/jobs/" + job.getId()))
+                .body(job);
+        }
+
+        try {
+            // the committer has already invalidated the cached body and refreshed the search index
+            return ResponseEntity.status(status).body(completion.get(writeQueue.getTimeoutMs(), TimeUnit.MILLISECONDS));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ResponseStatusException) {
+                return ResponseEntity.status(((ResponseStatusException) e.getCause()).getStatusCode()).build();
+            }
+
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
 
-            librariesRepository.save(library);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         }
+    }
 
-        booksRepository.delete(book);
+    private static boolean isConditional(WebRequest request) {
+        return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+            || request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null;
+    }
 
-        return ResponseEntity.status(HttpStatus.OK).build();
+    private byte[] serialize(BookDao book) {
+        try {
+            return mapper.writeValueAsBytes(book);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.controllers;
+
+import com.hackerrank.dao.CacheRegionStatsDao;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.List;
+import static java.util.stream.Collectors.toList;
+import java.util.stream.Stream;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class CacheController {
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @RequestMapping(
+        value = "/cache/stats",
+        method = RequestMethod.GET,
+        produces = "application/json"
+    )
+    public ResponseEntity stats() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        List<CacheRegionStatsDao> regions = Stream.of(statistics.getSecondLevelCacheRegionNames())
+            .sorted()
+            .map(region -> new CacheRegionStatsDao(statistics.getDomainDataRegionStatistics(region)))
+            .collect(toList());
+
+        return ResponseEntity.status(HttpStatus.OK).body(regions);
+    }
+}
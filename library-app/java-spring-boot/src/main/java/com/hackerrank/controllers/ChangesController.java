@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.controllers;
+
+import com.hackerrank.dao.ChangeFeedDao;
+import com.hackerrank.models.Change;
+import com.hackerrank.services.ChangeLog;
+import java.util.Collections;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Long-polled feed of the change log. An empty read parks the request until
+ * the next recording transaction completes instead of holding a thread.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ChangesController {
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    private static final long DEFAULT_TIMEOUT_MS = 30000;
+    private static final long MAX_TIMEOUT_MS = 60000;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @RequestMapping(
+        value = "/changes",
+        method = RequestMethod.GET,
+        produces = "application/json"
+    )
+    public DeferredResult<ResponseEntity> index(
+        @RequestParam(value = "since", defaultValue = "0") long since,
+        @RequestParam(value = "limit", required = false) Integer limit,
+        @RequestParam(value = "timeout_ms", required = false) Long timeoutMs
+    ) {
+        if (limit == null) {
+            limit = DEFAULT_LIMIT;
+        }
+
+        if (timeoutMs == null) {
+            timeoutMs = DEFAULT_TIMEOUT_MS;
+        }
+
+        DeferredResult<ResponseEntity> result = new DeferredResult<>(
+            timeoutMs,
+            () -> feed(since, Collections.emptyList())
+        );
+
+        if (since < 0 || limit < 1 || limit > MAX_LIMIT || timeoutMs < 0 || timeoutMs > MAX_TIMEOUT_MS) {
+            result.setResult(ResponseEntity.status(400).build());
+            return result;
+        }
+
+        poll(result, since, limit, timeoutMs > 0);
+
+        return result;
+    }
+
+    private void poll(DeferredResult<ResponseEntity> result, long since, int limit, boolean wait) {
+        if (result.isSetOrExpired()) {
+            return;
+        }
+
+        try {
+            // observed before reading, so a commit racing the read still wakes us
+            long observed = changeLog.getCompletions();
+            List<Change> changes = changeLog.read(since, limit);
+
+            if (!changes.isEmpty() || !wait) {
+                result.setResult(feed(since, changes));
+                return;
+            }
+
+            Runnable retry = () -> poll(result, since, limit, true);
+            result.onCompletion(() -> changeLog.cancel(retry));
+            changeLog.onCompletion(observed, retry);
+        } catch (RuntimeException e) {
+            result.setErrorResult(e);
+        }
+    }
+
+    private static ResponseEntity feed(long since, List<Change> changes) {
+        return ResponseEntity.status(HttpStatus.OK).body(new ChangeFeedDao(since, changes));
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.controllers;
+
+import com.hackerrank.dao.JobDao;
+import com.hackerrank.services.JobsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class JobsController {
+    @Autowired
+    private JobsService jobsService;
+
+    @RequestMapping(
+        value = "/jobs/{id}",
+        method = RequestMethod.GET,
+        produces = "application/json"
+    )
+    public ResponseEntity show(@PathVariable("id") String id) {
+        JobDao job = jobsService.find(id);
+
+        if (job == null) {
+            return ResponseEntity.status(404).build();
+        }
+
+        return ResponseEntity.status(HttpStatus.OK).body(job);
+    }
+}
@@ -15,92 +15,390 @@
  */
 package com.hackerrank.controllers;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hackerrank.dao.BookDao;
+import com.hackerrank.dao.BookStatsDao;
+import com.hackerrank.dao.JobDao;
+import com.hackerrank.dao.PublicationYearStatsDao;
+import com.hackerrank.dao.VersionDao;
 import com.hackerrank.models.Book;
 import com.hackerrank.models.Library;
 import com.hackerrank.repositories.BooksRepository;
 import com.hackerrank.repositories.LibrariesRepository;
-import java.util.Set;
+import com.hackerrank.services.BookResponseCache;
+import com.hackerrank.services.BookShards;
+import com.hackerrank.services.BookShards.Cursor;
+import com.hackerrank.services.JobsService;
+import com.hackerrank.services.LibrariesService;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.hibernate.CacheMode;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
 /**
  * @author Abhimanyu Singh
  * @author abhimanyusingh@hackerrank.com
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class LibrariesController {
+    private static final int EXPORT_BATCH_SIZE = 500;
+
+    /**
+     * Sort fields accepted by GET /libraries/{id}/books, by their JSON name.
+     */
+    private static final Map<String, String> BOOK_SORT_PROPERTIES = new HashMap<>();
+
+    static {
+        BOOK_SORT_PROPERTIES.put("isbn", "isbn");
+        BOOK_SORT_PROPERTIES.put("name", "name");
+        BOOK_SORT_PROPERTIES.put("author_name", "authorName");
+        BOOK_SORT_PROPERTIES.put("publication_year", "publicationYear");
+        BOOK_SORT_PROPERTIES.put("selling_price", "sellingPrice");
+    }
+
+    @Autowired
+    private LibrariesRepository librariesRepository;
+
     @Autowired
     private BooksRepository booksRepository;
 
     @Autowired
-    private LibrariesRepository librariesRepository;
+    private LibrariesService librariesService;
+
+    @Autowired
+    private BookShards bookShards;
 
+    @Autowired
+    private JobsService jobsService;
+
+    @Autowired
+    private BookResponseCache bookResponseCache;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Writes a library's own fields, the export streams its books after them.
+     */
+    private ObjectMapper libraryFieldsMapper;
+
+    @PostConstruct
+    public void open() {
+        libraryFieldsMapper = mapper.copy().addMixIn(Library.class, LibraryFields.class);
+    }
+
+    @Transactional(readOnly = true)
     @RequestMapping(
         value = "/libraries",
         method = RequestMethod.GET,
         produces = "application/json"
     )
-    public ResponseEntity index() throws JsonProcessingException {
-        return ResponseEntity.status(HttpStatus.OK)
-            .body(new ObjectMapper().writeValueAsString(librariesRepository.findAll()));
+    public ResponseEntity index() {
+        return ResponseEntity.status(HttpStatus.OK).body(librariesRepository.findAllSummaries());
+    }
+
+    @Transactional(readOnly = true)
+    @RequestMapping(
+        value = "/libraries/export",
+        method = RequestMethod.GET,
+        produces = "application/json"
+    )
+    public void export(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+        Session session = entityManager.unwrap(Session.class);
+        CacheMode cacheMode = session.getCacheMode();
+        // the exported rows are neither served from nor put into the second-level cache
+        session.setCacheMode(CacheMode.IGNORE);
+
+        // one cursor of held books per shard, all in library id order like the libraries, so each
+        // library's books are next in line on every shard when it is written
+        List<Cursor<Book>> cursors = new ArrayList<>();
+
+        try (
+            Stream<Library> libraries = librariesRepository.streamAll();
+            JsonGenerator generator = mapper.getFactory().createGenerator(response.getOutputStream())
+        ) {
+            for (String shard : bookShards.getShards()) {
+                cursors.add(bookShards.stream(shard, () -> {
+                    // sharded this is the shard's own session, which ends with its transaction
+                    entityManager.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+
+                    return booksRepository.streamAllHeld();
+                }));
+            }
+
+            generator.writeStartArray();
+
+            Iterator<Library> iterator = libraries.iterator();
+            List<Book> heads = new ArrayList<>();
+            cursors.forEach(cursor -> heads.add(advance(cursor)));
+            int written = 0;
+
+            while (iterator.hasNext()) {
+                Library library = iterator.next();
+                writeLibraryStart(generator, library);
+
+                for (int i = 0; i < cursors.size(); i++) {
+                    Book next = heads.get(i);
+
+                    while (next != null && next.getLibrary().getId() < library.getId()) {
+                        next = advance(cursors.get(i));
+                    }
+
+                    while (next != null && next.getLibrary().getId().equals(library.getId())) {
+                        generator.writeObject(next);
+                        next = advance(cursors.get(i));
+                    }
+
+                    heads.set(i, next);
+                }
+
+                generator.writeEndArray();
+                generator.writeEndObject();
+
+                // drop the library and its books, only the books read ahead stay, detached
+                entityManager.clear();
+
+                if (++written % EXPORT_BATCH_SIZE == 0) {
+                    generator.flush();
+                }
+            }
+
+            generator.writeEndArray();
+        } finally {
+            cursors.forEach(Cursor::close);
+            session.setCacheMode(cacheMode);
+        }
+    }
+
+    /**
+     * Opens the library's object and its books array.
+     */
+    private void writeLibraryStart(JsonGenerator generator, Library library) throws IOException {
+        generator.writeStartObject();
+
+        Iterator<Map.Entry<String, JsonNode>> fields = libraryFieldsMapper.valueToTree(library).fields();
+
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            generator.writeFieldName(field.getKey());
+            generator.writeTree(field.getValue());
+        }
+
+        generator.writeArrayFieldStart("books");
+    }
+
+    private static Book advance(Cursor<Book> books) {
+        return books.hasNext() ? books.next() : null;
     }
 
+    @Transactional(readOnly = true)
     @RequestMapping(
         value = "/libraries/{id}",
         method = RequestMethod.GET,
         produces = "application/json"
     )
-    public ResponseEntity show(@PathVariable("id") String id) {
+    public ResponseEntity show(@PathVariable("id") String id, WebRequest request) {
+        if (bookShards.isSharded()) {
+            // the books live on the shards, the validators are computed from the gathered books
+            Library library = librariesService.findWithBooks(Long.parseLong(id));
+
+            if (library == null) {
+                return ResponseEntity.status(404).build();
+            }
+
+            VersionDao version = VersionDao.of(library);
+
+            if (request.checkNotModified(version.getEtag(), version.getLastModified())) {
+                return null;
+            }
+
+            return ResponseEntity.status(HttpStatus.OK).body(library);
+        }
+
+        // one aggregate query yields the validators, a matching client copy skips loading the books
+        VersionDao version = librariesRepository.findVersion(Long.parseLong(id));
+
+        if (version == null) {
+            return ResponseEntity.status(404).build();
+        }
+
+        if (request.checkNotModified(version.getEtag(), version.getLastModified())) {
+            return null;
+        }
+
         Library library = librariesRepository.findById(Long.parseLong(id)).orElse(null);
 
         if (library == null) {
             return ResponseEntity.status(404).build();
         }
 
+        // loaded here rather than while serializing, inside the read-only transaction and from the same database
+        Hibernate.initialize(library.getBooks());
+
         return ResponseEntity.status(HttpStatus.OK).body(library);
     }
 
+    @Transactional(readOnly = true)
+    @RequestMapping(
+        value = "/libraries/{id}/books",
+        method = RequestMethod.GET,
+        produces = "application/json"
+    )
+    public ResponseEntity books(
+        @PathVariable("id") Long id,
+        @RequestParam(value = "page", required = false) Integer page,
+        @RequestParam(value = "size", required = false) Integer size,
+        @RequestParam(value = "sort", required = false) String sort
+    ) {
+        Sort order = Paging.sort(sort, BOOK_SORT_PROPERTIES, "isbn");
+        Pageable pageable = order == null ? null : Paging.of(page, size, order);
+
+        if (pageable == null) {
+            return ResponseEntity.status(400).build();
+        }
+
+        Pageable shardPageable = Paging.perShard(pageable, bookShards.getShards().size());
+        Page<BookDao> books = Paging.merge(
+            bookShards.readEach(() -> booksRepository.findByLibraryId(id, shardPageable).map(BookDao::new)),
+            pageable,
+            Paging.bookOrder(order)
+        );
+
+        // an empty result is the only case where the library itself may be missing
+        if (books.getTotalElements() == 0 && !librariesRepository.existsById(id)) {
+            return ResponseEntity.status(404).build();
+        }
+
+        return ResponseEntity.status(HttpStatus.OK)
+            .header(Paging.TOTAL_COUNT_HEADER, String.valueOf(books.getTotalElements()))
+            .body(books.getContent());
+    }
+
+    @Transactional(readOnly = true)
+    @RequestMapping(
+        value = "/libraries/{id}/stats",
+        method = RequestMethod.GET,
+        produces = "application/json"
+    )
+    public ResponseEntity stats(@PathVariable("id") Long id) {
+        BookStatsDao stats = new BookStatsDao(PublicationYearStatsDao.combine(
+            bookShards.readEach(() -> booksRepository.findPublicationYearStatsByLibraryId(id))
+        ));
+
+        if (stats.getCount() == 0 && !librariesRepository.existsById(id)) {
+            return ResponseEntity.status(404).build();
+        }
+
+        return ResponseEntity.status(HttpStatus.OK).body(stats);
+    }
+
     @RequestMapping(
         value = "/libraries",
         method = RequestMethod.POST,
         consumes = "application/json"
     )
     public ResponseEntity create(@RequestBody Library library) {
-        librariesRepository.save(library);
-
-        return ResponseEntity.status(HttpStatus.CREATED).body(library);
+        return ResponseEntity.status(HttpStatus.CREATED).body(librariesService.create(library));
     }
 
     @RequestMapping(
         value = "/libraries/{id}",
         method = RequestMethod.DELETE
     )
-    public ResponseEntity destroy(@PathVariable("id") Long id) {
-        Library library = librariesRepository.findById(id).orElse(null);
+    public ResponseEntity destroy(
+        @PathVariable("id") Long id,
+        @RequestParam(value = "async", defaultValue = "false") boolean async
+    ) {
+        if (async) {
+            if (!librariesRepository.existsById(id)) {
+                return ResponseEntity.status(400).build();
+            }
 
-        if (library == null) {
-            return ResponseEntity.status(400).build();
+            JobDao job = jobsService.submit("library-deletion", () -> {
+                try {
+                    if (!librariesService.delete(id)) {
+                        throw new IllegalStateException("library not found");
+                    }
+                } finally {
+                    // a delete that failed on one shard still unlinked the books of the others
+                    bookResponseCache.invalidateAll();
+                }
+
+                return null;
+            });
+
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/jobs/" + job.getId()))
+                .body(job);
         }
 
-        Set<Book> books = library.getBooks();
+        boolean deleted;
 
-        librariesRepository.delete(library);
+        try {
+            deleted = librariesService.delete(id);
+        } catch (ResponseStatusException e) {
+            // a delete that failed on one shard still unlinked the books of the others
+            bookResponseCache.invalidateAll();
 
-        books.stream().map(book -> {
-            book.setLibrary(null);
+            return ResponseEntity.status(e.getStatusCode()).build();
+        }
+
+        if (!deleted) {
+            return ResponseEntity.status(400).build();
+        }
 
-            return book;
-        })
-        .forEachOrdered(book -> booksRepository.save(book));
+        // every cached body of a book that belonged to the library has a stale library_id
+        bookResponseCache.invalidateAll();
 
         return ResponseEntity.status(HttpStatus.OK).build();
     }
+
+    /**
+     * Library fields without Library.books, which the export writes from its own cursor.
+     */
+    @JsonIgnoreProperties({
+        "books",
+        "handler",
+        "hibernateLazyInitializer"
+    })
+    private abstract static class LibraryFields {
+    }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.controllers;
+
+import com.hackerrank.dao.BookDao;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Offset pagination parameters shared by the paged endpoints, the keyset
+ * cursors of GET /books on both web stacks, and the merging of pages
+ * gathered from several book shards.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public final class Paging {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    public static final int DEFAULT_PAGE_LIMIT = 100;
+
+    public static final int MAX_PAGE_LIMIT = 1000;
+
+    static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Ascending orders of the book properties that can be sorted on, by their entity name.
+     */
+    private static final Map<String, Comparator<BookDao>> BOOK_PROPERTIES = new HashMap<>();
+
+    static {
+        BOOK_PROPERTIES.put("isbn", nullsLow(BookDao::getIsbn));
+        BOOK_PROPERTIES.put("name", nullsLow(BookDao::getName));
+        BOOK_PROPERTIES.put("authorName", nullsLow(BookDao::getAuthorName));
+        BOOK_PROPERTIES.put("publicationYear", nullsLow(BookDao::getPublicationYear));
+        BOOK_PROPERTIES.put("sellingPrice", nullsLow(BookDao::getSellingPrice));
+    }
+
+    private Paging() {
+    }
+
+    /**
+     * The requested page, or null if {@code page} is negative or {@code size} is outside 1..{@value #MAX_PAGE_SIZE}.
+     */
+    static Pageable of(Integer page, Integer size, Sort sort) {
+        int pageNumber = page == null ? 0 : page;
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : size;
+
+        if (pageNumber < 0 || pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            return null;
+        }
+
+        return PageRequest.of(pageNumber, pageSize, sort);
+    }
+
+    /**
+     * Parses {@code field[,asc|desc]} where field is a key of {@code properties}, always ordering by
+     * {@code tiebreaker} last so pages stay stable. Null if the field or direction is unknown.
+     */
+    static Sort sort(String sort, Map<String, String> properties, String tiebreaker) {
+        if (sort == null) {
+            return Sort.by(tiebreaker);
+        }
+
+        String[] parts = sort.split(",", -1);
+        String property = properties.get(parts[0]);
+
+        if (property == null || parts.length > 2) {
+            return null;
+        }
+
+        Sort.Direction direction = parts.length == 2 ? Sort.Direction.fromOptionalString(parts[1]).orElse(null)
+            : Sort.Direction.ASC;
+
+        if (direction == null) {
+            return null;
+        }
+
+        Sort order = Sort.by(direction, property);
+
+        return property.equals(tiebreaker) ? order : order.and(Sort.by(tiebreaker));
+    }
+
+    /**
+     * What each of {@code shards} must return for {@code pageable} to be cut from their union: the page itself when
+     * there is a single shard, otherwise every row up to the end of the page.
+     */
+    static Pageable perShard(Pageable pageable, int shards) {
+        if (shards == 1) {
+            return pageable;
+        }
+
+        long rows = (pageable.getPageNumber() + 1L) * pageable.getPageSize();
+
+        return PageRequest.of(0, (int) Math.min(rows, Integer.MAX_VALUE), pageable.getSort());
+    }
+
+    /**
+     * Page {@code pageable} of the union of {@code pages}, each fetched from one shard with perShard and sorted by
+     * {@code order}.
+     */
+    static <T> Page<T> merge(List<Page<T>> pages, Pageable pageable, Comparator<? super T> order) {
+        if (pages.size() == 1) {
+            return pages.get(0);
+        }
+
+        List<List<T>> contents = new ArrayList<>(pages.size());
+        long total = 0;
+
+        for (Page<T> page : pages) {
+            contents.add(page.getContent());
+            total += page.getTotalElements();
+        }
+
+        int offset = (int) Math.min(pageable.getOffset(), Integer.MAX_VALUE);
+        List<T> rows = merge(contents, order, offset + pageable.getPageSize());
+
+        return new PageImpl<>(
+            rows.size() > offset ? rows.subList(offset, rows.size()) : Collections.emptyList(),
+            pageable,
+            total
+        );
+    }
+
+    /**
+     * The first {@code limit} rows of the union of {@code parts}, each sorted by {@code order}.
+     */
+    public static <T> List<T> merge(List<List<T>> parts, Comparator<? super T> order, int limit) {
+        List<T> rows = new ArrayList<>();
+        parts.forEach(rows::addAll);
+
+        if (parts.size() > 1) {
+            rows.sort(order);
+        }
+
+        return rows.size() > limit ? rows.subList(0, limit) : rows;
+    }
+
+    /**
+     * The opaque cursor of a keyset page that ends with {@code isbn}.
+     */
+    public static String encodeCursor(String isbn) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(isbn.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The ISBN a keyset page ended with, or null if {@code cursor} is malformed.
+     */
+    public static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Orders books the way {@code sort} orders them in the database, where nulls sort low.
+     */
+    static Comparator<BookDao> bookOrder(Sort sort) {
+        Comparator<BookDao> order = (a, b) -> 0;
+
+        for (Sort.Order property : sort) {
+            Comparator<BookDao> next = BOOK_PROPERTIES.get(property.getProperty());
+            order = order.thenComparing(property.isAscending() ? next : next.reversed());
+        }
+
+        return order;
+    }
+
+    private static <T extends Comparable<? super T>> Comparator<BookDao> nullsLow(Function<BookDao, T> property) {
+        return Comparator.comparing(property, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+}
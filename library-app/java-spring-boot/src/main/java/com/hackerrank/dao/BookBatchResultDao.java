@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response of the /books/batch endpoints: the number of rows written and the
+ * per-entry outcomes.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class BookBatchResultDao {
+    private long count;
+    private List<BookBatchItemDao> items = new ArrayList<>();
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public List<BookBatchItemDao> getItems() {
+        return items;
+    }
+
+    public void setItems(List<BookBatchItemDao> items) {
+        this.items = items;
+    }
+
+    public void add(BookBatchItemDao item) {
+        this.items.add(item);
+    }
+}
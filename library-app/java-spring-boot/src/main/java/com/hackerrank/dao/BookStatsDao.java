@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.dao;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+/**
+ * Catalog statistics folded from the per-publication-year rows of a single
+ * GROUP BY query.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class BookStatsDao {
+    private long count;
+
+    @JsonProperty("min_selling_price")
+    private Float minSellingPrice;
+
+    @JsonProperty("max_selling_price")
+    private Float maxSellingPrice;
+
+    @JsonProperty("avg_selling_price")
+    private Double avgSellingPrice;
+
+    @JsonProperty("publication_years")
+    private List<PublicationYearStatsDao> publicationYears;
+
+    public BookStatsDao(List<PublicationYearStatsDao> publicationYears) {
+        this.publicationYears = publicationYears;
+
+        long pricedCount = 0;
+        double sellingPriceSum = 0;
+
+        for (PublicationYearStatsDao year : publicationYears) {
+            count += year.getCount();
+            pricedCount += year.getPricedCount();
+            sellingPriceSum += year.getSellingPriceSum();
+            minSellingPrice = min(minSellingPrice, year.getMinSellingPrice());
+            maxSellingPrice = max(maxSellingPrice, year.getMaxSellingPrice());
+        }
+
+        avgSellingPrice = pricedCount == 0 ? null : sellingPriceSum / pricedCount;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Float getMinSellingPrice() {
+        return minSellingPrice;
+    }
+
+    public Float getMaxSellingPrice() {
+        return maxSellingPrice;
+    }
+
+    public Double getAvgSellingPrice() {
+        return avgSellingPrice;
+    }
+
+    public List<PublicationYearStatsDao> getPublicationYears() {
+        return publicationYears;
+    }
+
+    private static Float min(Float a, Float b) {
+        return a == null ? b : b == null ? a : Float.valueOf(Math.min(a, b));
+    }
+
+    private static Float max(Float a, Float b) {
+        return a == null ? b : b == null ? a : Float.valueOf(Math.max(a, b));
+    }
+}
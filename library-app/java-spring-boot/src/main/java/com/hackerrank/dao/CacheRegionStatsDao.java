@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.dao;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.hibernate.stat.CacheRegionStatistics;
+
+/**
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class CacheRegionStatsDao {
+    private String region;
+
+    @JsonProperty("hit_count")
+    private long hitCount;
+
+    @JsonProperty("miss_count")
+    private long missCount;
+
+    @JsonProperty("put_count")
+    private long putCount;
+
+    @JsonProperty("element_count")
+    private long elementCount;
+
+    public CacheRegionStatsDao() {
+
+    }
+
+    public CacheRegionStatsDao(CacheRegionStatistics statistics) {
+        this.region = statistics.getRegionName();
+        this.hitCount = statistics.getHitCount();
+        this.missCount = statistics.getMissCount();
+        this.putCount = statistics.getPutCount();
+        this.elementCount = statistics.getElementCountInMemory();
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public void setHitCount(long hitCount) {
+        this.hitCount = hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public void setMissCount(long missCount) {
+        this.missCount = missCount;
+    }
+
+    public long getPutCount() {
+        return putCount;
+    }
+
+    public void setPutCount(long putCount) {
+        this.putCount = putCount;
+    }
+
+    public long getElementCount() {
+        return elementCount;
+    }
+
+    public void setElementCount(long elementCount) {
+        this.elementCount = elementCount;
+    }
+}
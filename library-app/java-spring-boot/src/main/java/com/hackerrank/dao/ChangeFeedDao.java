@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.dao;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.hackerrank.models.Change;
+import java.util.List;
+
+/**
+ * A page of the change log. Passing {@code next_since} back as {@code since}
+ * resumes right after the last change returned.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class ChangeFeedDao {
+    private List<Change> changes;
+
+    @JsonProperty("next_since")
+    private long nextSince;
+
+    public ChangeFeedDao(long since, List<Change> changes) {
+        this.changes = changes;
+        this.nextSince = changes.isEmpty() ? since : changes.get(changes.size() - 1).getId();
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public long getNextSince() {
+        return nextSince;
+    }
+}
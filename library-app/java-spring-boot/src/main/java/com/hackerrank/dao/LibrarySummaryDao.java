@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.dao;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Library listing row, built directly by a JPQL constructor expression from
+ * the library's maintained counters, so no book is read.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class LibrarySummaryDao {
+    private Long id;
+    private String name;
+
+    @JsonProperty("book_count")
+    private Long bookCount;
+
+    @JsonProperty("total_selling_value")
+    private Double totalSellingValue;
+
+    public LibrarySummaryDao() {
+
+    }
+
+    public LibrarySummaryDao(Long id, String name, Long bookCount, Double totalSellingValue) {
+        this.id = id;
+        this.name = name;
+        this.bookCount = bookCount;
+        this.totalSellingValue = totalSellingValue;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Long getBookCount() {
+        return bookCount;
+    }
+
+    public void setBookCount(Long bookCount) {
+        this.bookCount = bookCount;
+    }
+
+    public Double getTotalSellingValue() {
+        return totalSellingValue;
+    }
+
+    public void setTotalSellingValue(Double totalSellingValue) {
+        this.totalSellingValue = totalSellingValue;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.dao;
+
+/**
+ * Number and summed selling price of some books held by one library, used to
+ * shift the library's counters by what a bulk write changed, or the counters
+ * themselves when reconciling them.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class LibraryTotalsDao {
+    private Long libraryId;
+    private Long bookCount;
+    private Double sellingValue;
+
+    public LibraryTotalsDao() {
+
+    }
+
+    public LibraryTotalsDao(Long libraryId, Long bookCount, Double sellingValue) {
+        this.libraryId = libraryId;
+        this.bookCount = bookCount;
+        this.sellingValue = sellingValue;
+    }
+
+    public Long getLibraryId() {
+        return libraryId;
+    }
+
+    public Long getBookCount() {
+        return bookCount;
+    }
+
+    public Double getSellingValue() {
+        return sellingValue;
+    }
+}
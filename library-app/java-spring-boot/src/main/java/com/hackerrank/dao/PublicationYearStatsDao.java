@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.dao;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Books of one publication year, a GROUP BY row of the stats query. The
+ * price sums are kept so years can be combined into overall stats.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class PublicationYearStatsDao {
+    @JsonProperty("publication_year")
+    private Integer publicationYear;
+
+    private Long count;
+
+    @JsonProperty("min_selling_price")
+    private Float minSellingPrice;
+
+    @JsonProperty("max_selling_price")
+    private Float maxSellingPrice;
+
+    @JsonProperty("avg_selling_price")
+    private Double avgSellingPrice;
+
+    @JsonIgnore
+    private long pricedCount;
+
+    @JsonIgnore
+    private double sellingPriceSum;
+
+    public PublicationYearStatsDao() {
+
+    }
+
+    public PublicationYearStatsDao(
+        Integer publicationYear,
+        Long count,
+        Long pricedCount,
+        Float minSellingPrice,
+        Float maxSellingPrice,
+        Double sellingPriceSum
+    ) {
+        this.publicationYear = publicationYear;
+        this.count = count;
+        this.pricedCount = pricedCount;
+        this.minSellingPrice = minSellingPrice;
+        this.maxSellingPrice = maxSellingPrice;
+        this.sellingPriceSum = sellingPriceSum == null ? 0 : sellingPriceSum;
+        this.avgSellingPrice = pricedCount == 0 ? null : this.sellingPriceSum / pricedCount;
+    }
+
+    /**
+     * Rows of the same publication year from several shards folded into
+     * one row per year, in year order.
+     */
+    public static List<PublicationYearStatsDao> combine(List<List<PublicationYearStatsDao>> shards) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+
+        // the stats query orders by year too, where a missing year sorts first
+        Map<Integer, PublicationYearStatsDao> years = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+
+        for (List<PublicationYearStatsDao> shard : shards) {
+            for (PublicationYearStatsDao year : shard) {
+                years.merge(year.getPublicationYear(), year, PublicationYearStatsDao::plus);
+            }
+        }
+
+        return new ArrayList<>(years.values());
+    }
+
+    private PublicationYearStatsDao plus(PublicationYearStatsDao other) {
+        return new PublicationYearStatsDao(
+            publicationYear,
+            count + other.count,
+            pricedCount + other.pricedCount,
+            minSellingPrice == null ? other.minSellingPrice
+                : other.minSellingPrice == null ? minSellingPrice : Math.min(minSellingPrice, other.minSellingPrice),
+            maxSellingPrice == null ? other.maxSellingPrice
+                : other.maxSellingPrice == null ? maxSellingPrice : Math.max(maxSellingPrice, other.maxSellingPrice),
+            sellingPriceSum + other.sellingPriceSum
+        );
+    }
+
+    public Integer getPublicationYear() {
+        return publicationYear;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    public Float getMinSellingPrice() {
+        return minSellingPrice;
+    }
+
+    public Float getMaxSellingPrice() {
+        return maxSellingPrice;
+    }
+
+    public Double getAvgSellingPrice() {
+        return avgSellingPrice;
+    }
+
+    public long getPricedCount() {
+        return pricedCount;
+    }
+
+    public double getSellingPriceSum() {
+        return sellingPriceSum;
+    }
+}
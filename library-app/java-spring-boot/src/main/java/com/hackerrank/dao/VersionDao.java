@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.dao;
+
+import com.hackerrank.models.Book;
+import com.hackerrank.models.Library;
+import java.util.Date;
+
+/**
+ * Validators for conditional GETs, read by JPQL constructor expressions so a
+ * 304 can be answered without loading or serializing the entity.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class VersionDao {
+    private final String etag;
+    private final long lastModified;
+
+    /**
+     * Validators of a book: its version and modification time. The version
+     * starts over when a deleted ISBN is created again, so the time goes into
+     * the ETag too, keeping the old body's ETag from matching the new book.
+     */
+    public VersionDao(Long version, Date lastModified) {
+        this.etag = "\"" + version + "." + lastModified.getTime() + "\"";
+        this.lastModified = lastModified.getTime();
+    }
+
+    /**
+     * Validators of a library, whose representation embeds its books. Adding
+     * a book changes the count, editing one raises the sum of book versions,
+     * and removing one bumps the library's own version. Its own modification
+     * time tells a library apart from an earlier one that had the same id.
+     */
+    public VersionDao(Long version, Date lastModified, Long bookCount, Long bookVersions, Date booksLastModified) {
+        this.etag = "\"" + version + "." + lastModified.getTime() + "." + bookCount + "." + bookVersions + "\"";
+        this.lastModified = booksLastModified == null
+            ? lastModified.getTime()
+            : Math.max(lastModified.getTime(), booksLastModified.getTime());
+    }
+
+    public static VersionDao of(Book book) {
+        return new VersionDao(book.getVersion(), book.getLastModified());
+    }
+
+    /**
+     * Validators of a library whose books are loaded, the same values the
+     * LibrariesRepository query aggregates.
+     */
+    public static VersionDao of(Library library) {
+        long bookVersions = 0;
+        Date booksLastModified = null;
+
+        for (Book book : library.getBooks()) {
+            bookVersions += book.getVersion();
+
+            if (booksLastModified == null || book.getLastModified().after(booksLastModified)) {
+                booksLastModified = book.getLastModified();
+            }
+        }
+
+        return new VersionDao(
+            library.getVersion(),
+            library.getLastModified(),
+            (long) library.getBooks().size(),
+            bookVersions,
+            booksLastModified
+        );
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.datasource;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import java.sql.SQLException;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+
+/**
+ * Keeps rows read from a replica out of the second-level cache. Read-only
+ * transactions may be routed to a replica that lags the primary, so their
+ * sessions read the cache but never put into it; everything cached was
+ * read or written on the primary.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class ReplicaJpaDialect extends HibernateJpaDialect {
+    @Override
+    public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+        throws PersistenceException, SQLException {
+        Object transactionData = super.beginTransaction(entityManager, definition);
+
+        if (!definition.isReadOnly()) {
+            return transactionData;
+        }
+
+        Session session = entityManager.unwrap(Session.class);
+        ReadOnlyTransactionData readOnly = new ReadOnlyTransactionData(transactionData, session, session.getCacheMode());
+        session.setCacheMode(CacheMode.GET);
+
+        return readOnly;
+    }
+
+    @Override
+    public void cleanupTransaction(Object transactionData) {
+        if (transactionData instanceof ReadOnlyTransactionData) {
+            ReadOnlyTransactionData readOnly = (ReadOnlyTransactionData) transactionData;
+
+            // an open-in-view session outlives the transaction and goes back to how it was
+            readOnly.session.setCacheMode(readOnly.cacheMode);
+            super.cleanupTransaction(readOnly.transactionData);
+        } else {
+            super.cleanupTransaction(transactionData);
+        }
+    }
+
+    private static final class ReadOnlyTransactionData {
+        private final Object transactionData;
+
+        private final Session session;
+
+        private final CacheMode cacheMode;
+
+        ReadOnlyTransactionData(Object transactionData, Session session, CacheMode cacheMode) {
+            this.transactionData = transactionData;
+            this.session = session;
+            this.cacheMode = cacheMode;
+        }
+    }
+}
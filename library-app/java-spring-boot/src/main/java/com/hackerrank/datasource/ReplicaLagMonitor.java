@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Measures replica lag with a heartbeat row: the primary's copy is bumped
+ * on every check, and a replica is as far behind as the copy it serves is
+ * old. Replicas that cannot be read or lag more than the bound are taken
+ * out of rotation until they catch up.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class ReplicaLagMonitor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private final JdbcTemplate primary;
+
+    private final Map<String, JdbcTemplate> replicas = new LinkedHashMap<>();
+
+    private final ReplicaRoutingDataSource routingDataSource;
+
+    private final long maxLagMs;
+
+    /**
+     * Last measured lag per replica, NaN while it cannot be read.
+     */
+    private final Map<String, Double> lags = new ConcurrentHashMap<>();
+
+    public ReplicaLagMonitor(
+        DataSource primary,
+        Map<String, DataSource> replicas,
+        ReplicaRoutingDataSource routingDataSource,
+        long maxLagMs,
+        MeterRegistry meterRegistry
+    ) {
+        this.primary = new JdbcTemplate(primary);
+        this.routingDataSource = routingDataSource;
+        this.maxLagMs = maxLagMs;
+
+        replicas.forEach((name, dataSource) -> {
+            this.replicas.put(name, new JdbcTemplate(dataSource));
+            lags.put(name, Double.NaN);
+
+            Gauge.builder("library.datasource.replica.lag", lags, values -> values.get(name))
+                .description("Milliseconds the replica is behind the primary")
+                .baseUnit("milliseconds")
+                .tag("replica", name)
+                .register(meterRegistry);
+        });
+
+        this.primary.execute("create table if not exists replica_heartbeat (id int primary key, beat bigint not null)");
+    }
+
+    @Scheduled(fixedDelayString = "${library.replicas.lag-check-interval-ms:1000}")
+    public void check() {
+        long now = System.currentTimeMillis();
+
+        if (primary.update("update replica_heartbeat set beat = ? where id = 1", now) == 0) {
+            primary.update("insert into replica_heartbeat (id, beat) values (1, ?)", now);
+        }
+
+        List<String> available = new ArrayList<>();
+
+        replicas.forEach((name, replica) -> {
+            double lag;
+
+            try {
+                Long beat = replica.queryForObject("select beat from replica_heartbeat where id = 1", Long.class);
+                lag = Math.max(0, now - beat);
+            } catch (DataAccessException e) {
+                LOGGER.debug("replica {} is unreachable", name, e);
+                lag = Double.NaN;
+            }
+
+            lags.put(name, lag);
+
+            if (lag <= maxLagMs) {
+                available.add(name);
+            }
+        });
+
+        if (!available.equals(routingDataSource.getAvailableReplicas())) {
+            LOGGER.info("read-only transactions now go to {}", available.isEmpty() ? "the primary" : available);
+        }
+
+        routingDataSource.setAvailableReplicas(available);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Hands connections for read-only transactions to the replicas currently
+ * within the lag bound, round-robin, and everything else to the primary.
+ * Must sit behind a LazyConnectionDataSourceProxy: the read-only flag of a
+ * transaction is only known after the transaction manager asked for its
+ * connection.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    public static final String PRIMARY = "primary";
+
+    public static final String METRIC_NAME = "library.datasource.routed";
+
+    private final Map<String, DataSource> replicas;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Map<String, Counter> routed = new HashMap<>();
+
+    private volatile List<String> available = Collections.emptyList();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, MeterRegistry meterRegistry) {
+        this.replicas = replicas;
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+
+        targets.keySet().forEach(name -> routed.put((String) name, Counter.builder(METRIC_NAME)
+            .description("Connections handed out per target database")
+            .tag("target", (String) name)
+            .register(meterRegistry)
+        ));
+    }
+
+    public Map<String, DataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Replicas read-only transactions may use, in round-robin order. Empty
+     * sends everything to the primary.
+     */
+    public void setAvailableReplicas(List<String> replicas) {
+        available = Collections.unmodifiableList(replicas);
+    }
+
+    public List<String> getAvailableReplicas() {
+        return available;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String target = PRIMARY;
+
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            List<String> replicas = available;
+
+            if (!replicas.isEmpty()) {
+                target = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+            }
+        }
+
+        routed.get(target).increment();
+
+        return target;
+    }
+
+    /**
+     * Closes the replica pools, the primary is closed by whoever created it.
+     */
+    public void close() throws Exception {
+        for (DataSource replica : replicas.values()) {
+            if (replica instanceof AutoCloseable) {
+                ((AutoCloseable) replica).close();
+            }
+        }
+    }
+}
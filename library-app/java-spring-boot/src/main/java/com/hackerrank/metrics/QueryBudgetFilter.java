@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Counts the SQL statements of every request, records them as {@value #METRIC_NAME} and logs the requests that go
+ * over the budget together with their repeated statement shapes.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class QueryBudgetFilter extends OncePerRequestFilter {
+    public static final String METRIC_NAME = "http.server.requests.statements";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryBudgetFilter.class);
+
+    private final int maxStatements;
+
+    private final MeterRegistry meterRegistry;
+
+    public QueryBudgetFilter(int maxStatements, MeterRegistry meterRegistry) {
+        this.maxStatements = maxStatements;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+        throws ServletException, IOException {
+        StatementCounter.begin();
+        StatementCounter.Log log;
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            log = StatementCounter.end();
+        }
+
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+
+        DistributionSummary.builder(METRIC_NAME)
+            .description("SQL statements prepared per request")
+            .tag("method", request.getMethod())
+            .tag("uri", uri)
+            .register(meterRegistry)
+            .record(log.getCount());
+
+        if (log.getCount() > maxStatements) {
+            LOGGER.warn(
+                "{} {} prepared {} SQL statements, budget is {}, repeated: {}",
+                request.getMethod(), uri, log.getCount(), maxStatements, log.getRepeated()
+            );
+        }
+    }
+}
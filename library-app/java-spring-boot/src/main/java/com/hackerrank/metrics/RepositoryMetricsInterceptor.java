@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * Times repository method calls as {@value #METRIC_NAME}, tagged by repository, method and outcome.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class RepositoryMetricsInterceptor implements MethodInterceptor {
+    public static final String METRIC_NAME = "repository.invocations";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final String repository;
+
+    private final Map<Method, Timer> successTimers = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry registry;
+
+    public RepositoryMetricsInterceptor(ObjectProvider<MeterRegistry> meterRegistry, String repository) {
+        this.meterRegistry = meterRegistry;
+        this.repository = repository;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        MeterRegistry registry = registry();
+
+        if (registry == null) {
+            return invocation.proceed();
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            Object result = invocation.proceed();
+            successTimers.computeIfAbsent(invocation.getMethod(), method -> timer(registry, method, "success", "none"))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            return result;
+        } catch (Throwable e) {
+            timer(registry, invocation.getMethod(), "error", e.getClass().getSimpleName())
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            throw e;
+        }
+    }
+
+    private MeterRegistry registry() {
+        if (registry == null) {
+            // resolved lazily, repositories are created before the metrics infrastructure
+            registry = meterRegistry.getIfAvailable();
+        }
+
+        return registry;
+    }
+
+    private Timer timer(MeterRegistry registry, Method method, String state, String exception) {
+        return Timer.builder(METRIC_NAME)
+            .description("Spring Data repository method calls")
+            .tag("repository", repository)
+            .tag("method", method.getName())
+            .tag("state", state)
+            .tag("exception", exception)
+            .register(registry);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.metrics;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread between {@link #begin()} and {@link #end()},
+ * grouped by statement shape so repeated per-row queries (N+1) stand out. Work handed to other threads on the
+ * request's behalf is counted by installing the request's log there with {@link #install(Log)}.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class StatementCounter implements StatementInspector {
+    private static final ThreadLocal<Log> CURRENT = new ThreadLocal<>();
+
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * Starts counting on the current thread, discarding any log already in progress.
+     */
+    public static Log begin() {
+        Log log = new Log();
+        CURRENT.set(log);
+
+        return log;
+    }
+
+    /**
+     * Stops counting on the current thread and returns what was counted, or null if nothing was started.
+     */
+    public static Log end() {
+        Log log = CURRENT.get();
+        CURRENT.remove();
+
+        return log;
+    }
+
+    /**
+     * The log counting on the current thread, null if none.
+     */
+    public static Log current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Counts the current thread's statements into {@code log}, or stops counting them if it is null, and returns
+     * the log that was counting them before, to be installed again afterwards.
+     */
+    public static Log install(Log log) {
+        Log previous = CURRENT.get();
+
+        if (log == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(log);
+        }
+
+        return previous;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        Log log = CURRENT.get();
+
+        if (log != null) {
+            log.add(sql);
+        }
+
+        return sql;
+    }
+
+    /**
+     * Statements counted for one request, possibly by several threads at once.
+     */
+    public static class Log {
+        private final Map<String, Integer> shapes = new HashMap<>();
+
+        private int count;
+
+        private synchronized void add(String sql) {
+            count++;
+            // IN lists of different lengths are the same query shape
+            String shape = WHITESPACE.matcher(PARAMETER_LIST.matcher(sql).replaceAll("?")).replaceAll(" ").trim();
+            shapes.merge(shape, 1, Integer::sum);
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        /**
+         * Shapes executed more than once, most repeated first.
+         */
+        public synchronized Map<String, Integer> getRepeated() {
+            Map<String, Integer> repeated = new LinkedHashMap<>();
+
+            shapes.entrySet().stream()
+                .filter(entry -> entry.getValue() > 1)
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(entry -> repeated.put(entry.getKey(), entry.getValue()));
+
+            return repeated;
+        }
+    }
+}
@@ -18,18 +18,38 @@ package com.hackerrank.models;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.hackerrank.dao.BookDao;
-import javax.persistence.Column;
-import javax.persistence.Entity;
-import javax.persistence.FetchType;
-import javax.persistence.Id;
-import javax.persistence.JoinColumn;
-import javax.persistence.ManyToOne;
+import jakarta.persistence.Cacheable;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import jakarta.persistence.Version;
+import java.util.Date;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * @author Abhimanyu Singh
  * @author abhimanyusingh@hackerrank.com
  */
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_book_author_name_selling_price", columnList = "authorName, sellingPrice"),
+    @Index(name = "idx_book_library_id", columnList = "library_id"),
+    @Index(name = "idx_book_name", columnList = "name"),
+    @Index(name = "idx_book_publication_year", columnList = "publicationYear"),
+    @Index(name = "idx_book_selling_price", columnList = "sellingPrice")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Book {
     @Id
     @Column(
@@ -54,6 +74,14 @@ public class Book {
     @JoinColumn(name = "library_id")
     private Library library;
 
+    @JsonIgnore
+    @Version
+    private Long version;
+
+    @JsonIgnore
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastModified;
+
     public Book() {
 
     }
@@ -122,4 +150,18 @@ public class Book {
     public void setLibrary(Library library) {
         this.library = library;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        this.lastModified = new Date();
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.models;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import java.util.Date;
+
+/**
+ * One row of the append-only change log, written in the transaction of the
+ * book or library write it describes. Rows are immutable and served in
+ * sequence order by GET /changes.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Entity
+@Table(
+    name = "change_log",
+    indexes = @Index(name = "idx_change_log_created_at", columnList = "createdAt")
+)
+public class Change {
+    public static final String BOOK = "book";
+    public static final String LIBRARY = "library";
+
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+
+    /**
+     * Pooled allocation hands out ids in memory, a sequence round trip is
+     * only needed once per allocation block.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "change_sequence")
+    @SequenceGenerator(name = "change_sequence", sequenceName = "change_sequence", allocationSize = 50)
+    @JsonProperty("sequence")
+    private Long id;
+
+    @Column(nullable = false)
+    private String entity;
+
+    @JsonProperty("key")
+    @Column(name = "entity_key", nullable = false)
+    private String entityKey;
+
+    @Column(nullable = false)
+    private String operation;
+
+    @JsonProperty("created_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date createdAt;
+
+    public Change() {
+
+    }
+
+    public Change(String entity, String entityKey, String operation, Date createdAt) {
+        this.entity = entity;
+        this.entityKey = entityKey;
+        this.operation = operation;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public String getEntityKey() {
+        return entityKey;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -15,21 +15,35 @@
  */
 package com.hackerrank.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.Cacheable;
+import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import jakarta.persistence.Version;
+import java.util.Date;
 import java.util.Set;
-import javax.persistence.CascadeType;
-import javax.persistence.Entity;
-import javax.persistence.FetchType;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
-import javax.persistence.Id;
-import javax.persistence.OneToMany;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * @author Abhimanyu Singh
  * @author abhimanyusingh@hackerrank.com
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @JsonIgnoreProperties({
     "handler",
     "hibernateLazyInitializer"
@@ -49,6 +63,27 @@ public class Library {
     )
     private Set<Book> books;
 
+    /**
+     * Maintained by every book write in the same transaction, see
+     * LibrariesRepository.adjustCounters, and reconciled in the background.
+     * Never written by entity updates, so a stale copy cannot clobber them.
+     */
+    @JsonProperty(value = "book_count", access = JsonProperty.Access.READ_ONLY)
+    @Column(nullable = false, updatable = false)
+    private Long bookCount = 0L;
+
+    @JsonProperty(value = "total_selling_value", access = JsonProperty.Access.READ_ONLY)
+    @Column(nullable = false, updatable = false)
+    private Double totalSellingValue = 0.0;
+
+    @JsonIgnore
+    @Version
+    private Long version;
+
+    @JsonIgnore
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastModified;
+
     public Long getId() {
         return id;
     }
@@ -80,4 +115,26 @@ public class Library {
     public void removeBook(Book book) {
         this.books.remove(book);
     }
+
+    public Long getBookCount() {
+        return bookCount;
+    }
+
+    public Double getTotalSellingValue() {
+        return totalSellingValue;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        this.lastModified = new Date();
+    }
 }
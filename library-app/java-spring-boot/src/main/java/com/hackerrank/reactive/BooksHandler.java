@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.reactive;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hackerrank.controllers.Paging;
+import com.hackerrank.dao.BookDao;
+import com.hackerrank.dao.VersionDao;
+import com.hackerrank.models.Book;
+import com.hackerrank.repositories.BooksRepository;
+import com.hackerrank.services.BookResponseCache;
+import com.hackerrank.services.BookSearchIndex;
+import com.hackerrank.services.BookShards;
+import com.hackerrank.services.BooksService;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import static java.util.stream.Collectors.toList;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * The /books contract of BooksController on the reactive stack, delegating
+ * to the same services on the JDBC scheduler.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class BooksHandler {
+    private final BooksRepository booksRepository;
+
+    private final BooksService booksService;
+
+    private final BookShards bookShards;
+
+    private final BookResponseCache responseCache;
+
+    private final BookSearchIndex searchIndex;
+
+    private final ObjectMapper mapper;
+
+    private final JdbcScheduler jdbc;
+
+    public BooksHandler(
+        BooksRepository booksRepository,
+        BooksService booksService,
+        BookShards bookShards,
+        BookResponseCache responseCache,
+        BookSearchIndex searchIndex,
+        ObjectMapper mapper,
+        JdbcScheduler jdbc
+    ) {
+        this.booksRepository = booksRepository;
+        this.booksService = booksService;
+        this.bookShards = bookShards;
+        this.responseCache = responseCache;
+        this.searchIndex = searchIndex;
+        this.mapper = mapper;
+        this.jdbc = jdbc;
+    }
+
+    public Mono<ServerResponse> index(ServerRequest request) {
+        String limitParam = request.queryParam("limit").orElse(null);
+        String after = request.queryParam("after").orElse(null);
+
+        if (limitParam == null && after == null) {
+            return jdbc.read(() -> {
+                    List<BookDao> books = new ArrayList<>();
+                    bookShards.readEach(() -> booksRepository.findAll().stream().map(BookDao::new).collect(toList()))
+                        .forEach(books::addAll);
+
+                    return books;
+                })
+                .flatMap(books -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(books));
+        }
+
+        int limit;
+
+        try {
+            limit = limitParam == null ? Paging.DEFAULT_PAGE_LIMIT : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().build();
+        }
+
+        String from = after == null ? null : Paging.decodeCursor(after);
+
+        if (limit < 1 || limit > Paging.MAX_PAGE_LIMIT || (after != null && from == null)) {
+            return ServerResponse.badRequest().build();
+        }
+
+        // one extra row tells whether a next page exists, as in BooksController
+        Pageable pageable = PageRequest.of(0, limit + 1);
+
+        return jdbc.read(() -> Paging.merge(
+                bookShards.readEach(() -> (from == null
+                    ? booksRepository.findAllByOrderByIsbnAsc(pageable)
+                    : booksRepository.findByIsbnGreaterThanOrderByIsbnAsc(from, pageable)
+                ).stream().map(BookDao::new).collect(toList())),
+                Comparator.comparing(BookDao::getIsbn),
+                limit + 1
+            ))
+            .flatMap(page -> {
+                ServerResponse.BodyBuilder response = ServerResponse.ok().contentType(MediaType.APPLICATION_JSON);
+
+                if (page.size() > limit) {
+                    page = page.subList(0, limit);
+                    response.header(Paging.NEXT_CURSOR_HEADER, Paging.encodeCursor(page.get(limit - 1).getIsbn()));
+                }
+
+                return response.bodyValue(page);
+            });
+    }
+
+    public Mono<ServerResponse> show(ServerRequest request) {
+        String isbn = request.pathVariable("isbn");
+        BookResponseCache.Entry cached = responseCache.isEnabled() ? responseCache.getIfPresent(isbn) : null;
+
+        // a warm entry is answered on the event loop, only a miss goes to the database
+        Mono<BookResponseCache.Entry> entry = cached != null
+            ? Mono.just(cached)
+            : jdbc.read(() -> load(isbn));
+
+        return entry
+            .flatMap(found -> {
+                Instant lastModified = Instant.ofEpochMilli(found.getLastModified());
+
+                // the same If-None-Match and If-Modified-Since evaluation as the servlet stack
+                return request.checkNotModified(lastModified, found.getEtag())
+                    .switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .eTag(found.getEtag())
+                        .lastModified(lastModified)
+                        .bodyValue(found.getBody())
+                    ));
+            })
+            .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> create(ServerRequest request) {
+        return request.bodyToMono(BookDao.class)
+            .flatMap(book -> jdbc.write(() -> new BookDao(booksService.create(book))))
+            .flatMap(book -> {
+                written(book.getIsbn());
+
+                return ServerResponse.status(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON).bodyValue(book);
+            })
+            .onErrorResume(ResponseStatusException.class, e -> ServerResponse.status(e.getStatusCode()).build());
+    }
+
+    public Mono<ServerResponse> update(ServerRequest request) {
+        String isbn = request.pathVariable("isbn");
+
+        return request.bodyToMono(BookDao.class)
+            .flatMap(changes -> jdbc.write(() -> new BookDao(booksService.update(isbn, changes))))
+            .flatMap(book -> {
+                written(isbn);
+
+                return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(book);
+            })
+            .onErrorResume(ResponseStatusException.class, e -> ServerResponse.status(e.getStatusCode()).build());
+    }
+
+    public Mono<ServerResponse> delete(ServerRequest request) {
+        String isbn = request.pathVariable("isbn");
+
+        return jdbc.write(() -> {
+                booksService.delete(isbn);
+                return isbn;
+            })
+            .flatMap(deleted -> {
+                written(deleted);
+
+                return ServerResponse.ok().build();
+            })
+            .onErrorResume(ResponseStatusException.class, e -> ServerResponse.status(e.getStatusCode()).build());
+    }
+
+    private BookResponseCache.Entry load(String isbn) {
+        String shard = bookShards.shardOf(isbn);
+
+        if (!responseCache.isEnabled()) {
+            return bookShards.read(shard, () -> booksRepository.findById(isbn).map(this::entry).orElse(null));
+        }
+
+        return responseCache.get(isbn, key -> bookShards.read(shard, () ->
+            booksRepository.findById(key).map(this::entry).orElse(null)
+        ));
+    }
+
+    private BookResponseCache.Entry entry(Book book) {
+        try {
+            return new BookResponseCache.Entry(mapper.writeValueAsBytes(new BookDao(book)), VersionDao.of(book));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Same post-commit bookkeeping as the servlet controller.
+     */
+    private void written(String isbn) {
+        responseCache.invalidate(isbn);
+        searchIndex.refresh(Collections.singletonList(isbn));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.reactive;
+
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Runs blocking JPA work off the event loop, on as many threads as there are
+ * JDBC connections: more threads would only wait for a connection, fewer
+ * would leave connections idle. Waiting requests queue here without holding
+ * a thread.
+ *
+ * The handlers stay on JPA over JDBC, not Spring Data R2DBC, although Boot
+ * 3.3 supports it. Everything they delegate to is built on JPA
+ * transactions: book shards and read replicas route through JDBC
+ * DataSources, the change log joins the caller's transaction, and the
+ * Library and Book second-level cache regions are kept in step by
+ * Hibernate. R2DBC has none of these, so it would mean a second
+ * implementation of every service for one profile.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class JdbcScheduler {
+    private final Scheduler scheduler;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final TransactionTemplate transaction;
+
+    public JdbcScheduler(int threads, PlatformTransactionManager transactionManager) {
+        this.scheduler = Schedulers.fromExecutorService(
+            Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("jdbc-"))
+        );
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Emits what {@code work} returns inside a read-only transaction, or
+     * completes empty on null. Lazy associations the response needs must be
+     * loaded by {@code work}, the session is closed once it returns.
+     */
+    public <T> Mono<T> read(Supplier<T> work) {
+        return Mono.fromSupplier(() -> readOnlyTransaction.execute(status -> work.get())).subscribeOn(scheduler);
+    }
+
+    /**
+     * Like read, but in a read-write transaction that commits before the
+     * result is emitted.
+     */
+    public <T> Mono<T> write(Supplier<T> work) {
+        return Mono.fromSupplier(() -> transaction.execute(status -> work.get())).subscribeOn(scheduler);
+    }
+
+    public void dispose() {
+        scheduler.dispose();
+    }
+}
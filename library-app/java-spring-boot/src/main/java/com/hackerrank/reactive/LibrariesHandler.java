@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.reactive;
+
+import com.hackerrank.dao.VersionDao;
+import com.hackerrank.models.Library;
+import com.hackerrank.repositories.LibrariesRepository;
+import com.hackerrank.services.BookResponseCache;
+import com.hackerrank.services.LibrariesService;
+import java.time.Instant;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * The /libraries contract of LibrariesController on the reactive stack,
+ * delegating to the same services on the JDBC scheduler.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class LibrariesHandler {
+    private final LibrariesRepository librariesRepository;
+
+    private final LibrariesService librariesService;
+
+    private final BookResponseCache bookResponseCache;
+
+    private final JdbcScheduler jdbc;
+
+    public LibrariesHandler(
+        LibrariesRepository librariesRepository,
+        LibrariesService librariesService,
+        BookResponseCache bookResponseCache,
+        JdbcScheduler jdbc
+    ) {
+        this.librariesRepository = librariesRepository;
+        this.librariesService = librariesService;
+        this.bookResponseCache = bookResponseCache;
+        this.jdbc = jdbc;
+    }
+
+    public Mono<ServerResponse> index(ServerRequest request) {
+        return jdbc.read(librariesRepository::findAllSummaries)
+            .flatMap(libraries -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(libraries));
+    }
+
+    public Mono<ServerResponse> show(ServerRequest request) {
+        Long id = parseId(request);
+
+        if (id == null) {
+            return ServerResponse.badRequest().build();
+        }
+
+        // serialized after the session closes, so the books are loaded here
+        return jdbc.read(() -> librariesService.findWithBooks(id))
+            .flatMap(library -> {
+                // the validators the servlet stack sends, computed from the loaded books
+                VersionDao version = VersionDao.of(library);
+                Instant lastModified = Instant.ofEpochMilli(version.getLastModified());
+
+                return request.checkNotModified(lastModified, version.getEtag())
+                    .switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .eTag(version.getEtag())
+                        .lastModified(lastModified)
+                        .bodyValue(library)
+                    ));
+            })
+            .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> create(ServerRequest request) {
+        return request.bodyToMono(Library.class)
+            .flatMap(library -> jdbc.write(() -> librariesService.create(library)))
+            .flatMap(library -> ServerResponse.status(HttpStatus.CREATED)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(library)
+            );
+    }
+
+    public Mono<ServerResponse> delete(ServerRequest request) {
+        Long id = parseId(request);
+
+        if (id == null) {
+            return ServerResponse.badRequest().build();
+        }
+
+        return jdbc.write(() -> {
+                try {
+                    return librariesService.delete(id) ? HttpStatus.OK : HttpStatus.BAD_REQUEST;
+                } catch (ResponseStatusException e) {
+                    // caught inside the transaction, so what was recorded for the shards that committed is kept
+                    return e.getStatusCode();
+                }
+            })
+            .flatMap(status -> {
+                if (status == HttpStatus.BAD_REQUEST) {
+                    return ServerResponse.badRequest().build();
+                }
+
+                // every cached body of a book that belonged to the library has a stale library_id, also when
+                // a failed shard kept its books
+                bookResponseCache.invalidateAll();
+
+                return ServerResponse.status(status).build();
+            });
+    }
+
+    private static Long parseId(ServerRequest request) {
+        try {
+            return Long.parseLong(request.pathVariable("id"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.repositories;
+
+import com.hackerrank.models.Book;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Search filters over {@link Book}, each one null when its criteria are absent so they can be chained freely.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public final class BookSpecifications {
+    private static final char LIKE_ESCAPE = '\\';
+
+    private BookSpecifications() {
+    }
+
+    public static Specification<Book> authorNameIs(String authorName) {
+        if (authorName == null) {
+            return null;
+        }
+
+        return (book, query, builder) -> builder.equal(book.get("authorName"), authorName);
+    }
+
+    /**
+     * Prefix match, which unlike a contains match can use the name index.
+     */
+    public static Specification<Book> nameStartsWith(String prefix) {
+        if (prefix == null) {
+            return null;
+        }
+
+        String pattern = prefix
+            .replace("\\", "\\\\")
+            .replace("%", "\\%")
+            .replace("_", "\\_") + "%";
+
+        return (book, query, builder) -> builder.like(book.get("name"), pattern, LIKE_ESCAPE);
+    }
+
+    public static Specification<Book> publishedBetween(Integer from, Integer to) {
+        return between("publicationYear", from, to);
+    }
+
+    public static Specification<Book> pricedBetween(Float from, Float to) {
+        return between("sellingPrice", from, to);
+    }
+
+    private static <T extends Comparable<? super T>> Specification<Book> between(String attribute, T from, T to) {
+        if (from == null && to == null) {
+            return null;
+        }
+
+        if (to == null) {
+            return (book, query, builder) -> builder.greaterThanOrEqualTo(book.get(attribute), from);
+        }
+
+        if (from == null) {
+            return (book, query, builder) -> builder.lessThanOrEqualTo(book.get(attribute), to);
+        }
+
+        return (book, query, builder) -> builder.between(book.get(attribute), from, to);
+    }
+}
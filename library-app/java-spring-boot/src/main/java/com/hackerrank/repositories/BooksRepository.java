@@ -15,8 +15,26 @@
  */
 package com.hackerrank.repositories;
 
+import com.hackerrank.dao.BookSuggestionDao;
+import com.hackerrank.dao.LibraryTotalsDao;
+import com.hackerrank.dao.PublicationYearStatsDao;
+import com.hackerrank.dao.VersionDao;
 import com.hackerrank.models.Book;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -24,6 +42,145 @@ import org.springframework.stereotype.Repository;
  * @author abhimanyusingh@hackerrank.com
  */
 @Repository
-public interface BooksRepository extends JpaRepository<Book, String> {
+public interface BooksRepository extends JpaRepository<Book, String>, JpaSpecificationExecutor<Book> {
+    /**
+     * First page of books in primary key order.
+     */
+    List<Book> findAllByOrderByIsbnAsc(Pageable pageable);
 
+    /**
+     * Keyset page of books whose ISBN sorts strictly after {@code isbn}.
+     */
+    List<Book> findByIsbnGreaterThanOrderByIsbnAsc(String isbn, Pageable pageable);
+
+    /**
+     * Page of the books held by a library, counted with a separate query on library_id.
+     */
+    Page<Book> findByLibraryId(Long libraryId, Pageable pageable);
+
+    /**
+     * Count and selling price aggregates of the whole catalog per publication year.
+     */
+    @Query(
+        "select new com.hackerrank.dao.PublicationYearStatsDao("
+        + "b.publicationYear, count(b), count(b.sellingPrice), min(b.sellingPrice), max(b.sellingPrice), "
+        + "sum(b.sellingPrice)"
+        + ") from Book b group by b.publicationYear order by b.publicationYear"
+    )
+    List<PublicationYearStatsDao> findPublicationYearStats();
+
+    /**
+     * Count and selling price aggregates of a library's books per publication year.
+     */
+    @Query(
+        "select new com.hackerrank.dao.PublicationYearStatsDao("
+        + "b.publicationYear, count(b), count(b.sellingPrice), min(b.sellingPrice), max(b.sellingPrice), "
+        + "sum(b.sellingPrice)"
+        + ") from Book b where b.library.id = :libraryId group by b.publicationYear order by b.publicationYear"
+    )
+    List<PublicationYearStatsDao> findPublicationYearStatsByLibraryId(@Param("libraryId") Long libraryId);
+
+    /**
+     * Conditional GET validators of a book, null if there is no such book.
+     */
+    @Query("select new com.hackerrank.dao.VersionDao(b.version, b.lastModified) from Book b where b.isbn = :isbn")
+    VersionDao findVersion(@Param("isbn") String isbn);
+
+    /**
+     * ISBNs of every book held by a library.
+     */
+    @Query("select b.isbn from Book b where b.library.id = :libraryId")
+    List<String> findIsbnsByLibraryId(@Param("libraryId") Long libraryId);
+
+    /**
+     * Count and summed selling price of {@code isbns} per library holding them.
+     */
+    @Query(
+        "select new com.hackerrank.dao.LibraryTotalsDao(b.library.id, count(b), coalesce(sum(b.sellingPrice), 0.0)) "
+        + "from Book b where b.isbn in :isbns and b.library is not null group by b.library.id"
+    )
+    List<LibraryTotalsDao> findLibraryTotals(@Param("isbns") Collection<String> isbns);
+
+    /**
+     * Count and summed selling price of the books held by a library, empty if it holds none.
+     */
+    @Query(
+        "select new com.hackerrank.dao.LibraryTotalsDao(b.library.id, count(b), coalesce(sum(b.sellingPrice), 0.0)) "
+        + "from Book b where b.library.id = :libraryId group by b.library.id"
+    )
+    List<LibraryTotalsDao> findLibraryTotalsByLibraryId(@Param("libraryId") Long libraryId);
+
+    /**
+     * Count and summed selling price of the books of every library holding any.
+     */
+    @Query(
+        "select new com.hackerrank.dao.LibraryTotalsDao(b.library.id, count(b), coalesce(sum(b.sellingPrice), 0.0)) "
+        + "from Book b where b.library is not null group by b.library.id"
+    )
+    List<LibraryTotalsDao> findAllLibraryTotals();
+
+    /**
+     * The subset of {@code isbns} that is already stored.
+     */
+    @Query("select b.isbn from Book b where b.isbn in :isbns")
+    List<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+
+    /**
+     * Set-based delete bypassing the persistence context, returns the number of rows removed.
+     */
+    @Modifying
+    @Query("delete from Book b where b.isbn in :isbns")
+    int deleteByIsbns(@Param("isbns") Collection<String> isbns);
+
+    /**
+     * Set-based unlink of every book held by a library, returns the number of rows touched.
+     */
+    @Modifying
+    @Query(
+        "update Book b set b.library = null, b.version = b.version + 1, b.lastModified = :now "
+        + "where b.library.id = :libraryId"
+    )
+    int detachFromLibrary(@Param("libraryId") Long libraryId, @Param("now") Date now);
+
+    /**
+     * Search index rows of {@code isbns}, read as scalars so they reflect the database rather than the persistence
+     * context.
+     */
+    @Query(
+        "select new com.hackerrank.dao.BookSuggestionDao(b.isbn, b.name, b.authorName) "
+        + "from Book b where b.isbn in :isbns"
+    )
+    List<BookSuggestionDao> findSuggestions(@Param("isbns") Collection<String> isbns);
+
+    /**
+     * Forward-only cursor over the search index rows of books modified at or after {@code since}, must be consumed
+     * inside a transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query(
+        "select new com.hackerrank.dao.BookSuggestionDao(b.isbn, b.name, b.authorName) "
+        + "from Book b where b.lastModified >= :since"
+    )
+    Stream<BookSuggestionDao> streamSuggestionsModifiedSince(@Param("since") Date since);
+
+    /**
+     * Forward-only cursor over every book, must be consumed inside a transaction and closed.
+     */
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("select b from Book b")
+    Stream<Book> streamAll();
+
+    /**
+     * Forward-only cursor over every book held by a library, in library_id order, must be consumed inside a
+     * transaction and closed.
+     */
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("select b from Book b where b.library is not null order by b.library.id")
+    Stream<Book> streamAllHeld();
 }
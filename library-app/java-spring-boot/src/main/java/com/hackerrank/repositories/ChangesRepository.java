@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.repositories;
+
+import com.hackerrank.models.Change;
+import java.util.Date;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Repository
+public interface ChangesRepository extends JpaRepository<Change, Long> {
+    /**
+     * Changes after {@code since} up to and including {@code until}, in sequence order.
+     */
+    @Query("select c from Change c where c.id > :since and c.id <= :until order by c.id")
+    List<Change> findRange(@Param("since") long since, @Param("until") long until, Pageable pageable);
+
+    /**
+     * Highest sequence stored, 0 if the log is empty.
+     */
+    @Query("select coalesce(max(c.id), 0L) from Change c")
+    long findMaxId();
+
+    /**
+     * Set-based removal of changes past retention, returns the number of rows removed.
+     */
+    @Modifying
+    @Query("delete from Change c where c.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") Date cutoff);
+}
@@ -15,8 +15,25 @@
  */
 package com.hackerrank.repositories;
 
+import com.hackerrank.dao.LibrarySummaryDao;
+import com.hackerrank.dao.LibraryTotalsDao;
+import com.hackerrank.dao.VersionDao;
 import com.hackerrank.models.Library;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_NATIVE_SPACES;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -25,5 +42,112 @@ import org.springframework.stereotype.Repository;
  */
 @Repository
 public interface LibrariesRepository extends JpaRepository<Library, Long> {
+    /**
+     * Query space of the native counter and version updates below. No entity maps to it, so Hibernate neither
+     * evicts the whole Library region nor flushes the session for them, callers evict what they updated through
+     * LibraryCache.
+     */
+    String COUNTERS_SPACE = "library_counters";
 
+    /**
+     * Every library with its maintained counters, one row read per library.
+     */
+    @Query(
+        "select new com.hackerrank.dao.LibrarySummaryDao(l.id, l.name, l.bookCount, l.totalSellingValue) "
+        + "from Library l "
+        + "order by l.id"
+    )
+    List<LibrarySummaryDao> findAllSummaries();
+
+    /**
+     * Conditional GET validators of a library and the books it embeds, null
+     * if there is no such library.
+     */
+    @Query(
+        "select new com.hackerrank.dao.VersionDao("
+        + "l.version, l.lastModified, count(b), coalesce(sum(b.version), 0L), max(b.lastModified)) "
+        + "from Library l left join l.books b "
+        + "where l.id = :id "
+        + "group by l.id, l.version, l.lastModified"
+    )
+    VersionDao findVersion(@Param("id") Long id);
+
+    /**
+     * Bumps the version of libraries whose representation changed without a
+     * write to their own row, such as a book leaving them.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = COUNTERS_SPACE))
+    @Query(
+        value = "update library set version = version + 1, last_modified = :now where id in :ids",
+        nativeQuery = true
+    )
+    int touch(@Param("ids") Collection<Long> ids, @Param("now") Date now);
+
+    /**
+     * Atomically shifts a library's counters, so concurrent book writes never lose an update. Deliberately leaves the
+     * version alone, the library's validators already cover its books.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = COUNTERS_SPACE))
+    @Query(
+        value = "update library set book_count = book_count + :count, "
+            + "total_selling_value = total_selling_value + :value "
+            + "where id = :id",
+        nativeQuery = true
+    )
+    int adjustCounters(@Param("id") Long id, @Param("count") long count, @Param("value") double value);
+
+    /**
+     * Every library's counters, locking the library rows in id order, the order CounterDeltas shifts them in, so
+     * book writes adjusting counters wait for the caller's transaction instead of deadlocking with it.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query(
+        "select new com.hackerrank.dao.LibraryTotalsDao(l.id, l.bookCount, l.totalSellingValue) "
+        + "from Library l "
+        + "order by l.id"
+    )
+    List<LibraryTotalsDao> lockAllCounters();
+
+    /**
+     * Overwrites a library's counters and bumps its version, for counters found to have drifted from its books.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = COUNTERS_SPACE))
+    @Query(
+        value = "update library set book_count = :count, total_selling_value = :value, "
+            + "version = version + 1, last_modified = :now "
+            + "where id = :id",
+        nativeQuery = true
+    )
+    int setCounters(
+        @Param("id") Long id,
+        @Param("count") long count,
+        @Param("value") double value,
+        @Param("now") Date now
+    );
+
+    /**
+     * The subset of {@code ids} that belongs to stored libraries.
+     */
+    @Query("select l.id from Library l where l.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Set-based delete that skips the cascade over Library.books, returns the number of rows removed.
+     */
+    @Modifying
+    @Query("delete from Library l where l.id = :id")
+    int deleteByIdDirectly(@Param("id") Long id);
+
+    /**
+     * Forward-only cursor over every library in id order, must be consumed inside a transaction and closed.
+     */
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("select l from Library l order by l.id")
+    Stream<Library> streamAll();
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hackerrank.dao.VersionDao;
+import com.hackerrank.datasource.ReplicaRoutingDataSource;
+import jakarta.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Already-serialized GET /books/{isbn} bodies keyed by ISBN, bounded by total
+ * bytes. Writers must invalidate after their transaction has committed.
+ * Entries never expire, so with read replicas they are loaded from the
+ * primary: a lagging replica's copy would stay cached until the next write.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Service
+public class BookResponseCache {
+    private final boolean enabled;
+
+    private final Cache<String, Entry> cache;
+
+    /**
+     * Bumped by every invalidation, lets a load that raced with a write drop
+     * what it just cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired(required = false)
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Read-write, so routed to the primary, and a transaction of its own
+     * rather than the caller's read-only one. Null without replicas.
+     */
+    private TransactionTemplate primaryTransaction;
+
+    public BookResponseCache(
+        @Value("${library.response-cache.enabled:false}") boolean enabled,
+        @Value("${library.response-cache.max-bytes:67108864}") long maxBytes
+    ) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String isbn, Entry entry) -> isbn.length() + entry.getBody().length)
+            .build();
+    }
+
+    @PostConstruct
+    public void open() {
+        if (replicaRoutingDataSource == null) {
+            return;
+        }
+
+        primaryTransaction = new TransactionTemplate(transactionManager);
+        primaryTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Entry getIfPresent(String isbn) {
+        return cache.getIfPresent(isbn);
+    }
+
+    /**
+     * Returns the cached entry, or builds one with {@code loader} and caches
+     * it. A null from the loader (unknown ISBN) is not cached.
+     */
+    public Entry get(String isbn, Function<String, Entry> loader) {
+        Entry entry = cache.getIfPresent(isbn);
+
+        if (entry != null) {
+            return entry;
+        }
+
+        long loadedAt = generation.get();
+        entry = primaryTransaction == null
+            ? loader.apply(isbn)
+            : primaryTransaction.execute(status -> loader.apply(isbn));
+
+        if (entry == null) {
+            return null;
+        }
+
+        cache.put(isbn, entry);
+
+        if (generation.get() != loadedAt) {
+            cache.invalidate(isbn);
+        }
+
+        return entry;
+    }
+
+    public void invalidate(String isbn) {
+        generation.incrementAndGet();
+        cache.invalidate(isbn);
+    }
+
+    public void invalidate(Collection<String> isbns) {
+        generation.incrementAndGet();
+        cache.invalidateAll(isbns);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public static class Entry {
+        private final byte[] body;
+        private final String etag;
+        private final long lastModified;
+
+        public Entry(byte[] body, VersionDao version) {
+            this.body = body;
+            this.etag = version.getEtag();
+            this.lastModified = version.getLastModified();
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
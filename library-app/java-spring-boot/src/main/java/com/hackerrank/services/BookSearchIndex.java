@@ -0,0 +1,493 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.services;
+
+import com.hackerrank.dao.BookSuggestionDao;
+import com.hackerrank.repositories.BooksRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Bits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Lucene index over book names and authors for autocomplete. Lives in memory,
+ * or in library.search.index-path when set, in which case a restart only
+ * reindexes the books modified since the previous startup and drops those
+ * deleted meanwhile. Refreshes are committed every
+ * library.search.commit-interval-ms and on shutdown.
+ *
+ * Writers must refresh the ISBNs they touched after their transaction has
+ * committed. The refresh runs in the background, searches usually see a
+ * write within {@value #MAX_STALE_SECONDS}s of it.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Service
+public class BookSearchIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookSearchIndex.class);
+
+    private static final String ISBN = "isbn";
+
+    private static final String NAME = "name";
+
+    private static final String AUTHOR_NAME = "author_name";
+
+    private static final String MODIFIED_SINCE = "modified_since";
+
+    private static final double MAX_STALE_SECONDS = 0.1;
+
+    private static final double MIN_STALE_SECONDS = 0.01;
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private BookShards bookShards;
+
+    @Autowired
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private TaskExecutor taskExecutor;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${library.search.index-path:}")
+    private String indexPath;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+
+    /**
+     * Serializes refreshes so the last one to index an ISBN always read the
+     * latest committed row.
+     */
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    /**
+     * ISBNs refreshed while a rebuild is streaming, re-read once it is done in
+     * case the rebuild overwrote them with an older row. Null outside rebuilds.
+     */
+    private volatile Set<String> refreshedDuringRebuild;
+
+    private volatile boolean closed;
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private Directory directory;
+
+    private IndexWriter writer;
+
+    private SearcherManager searcherManager;
+
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+    @PostConstruct
+    public void open() throws IOException {
+        directory = indexPath.isEmpty() ? new ByteBuffersDirectory() : new MMapDirectory(Paths.get(indexPath));
+        writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+        searcherManager = new SearcherManager(writer, new SearcherFactory());
+
+        reopenThread = new ControlledRealTimeReopenThread<>(
+            writer, searcherManager, MAX_STALE_SECONDS, MIN_STALE_SECONDS
+        );
+        reopenThread.setName("book-search-reopen");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        closed = true;
+        reopenThread.close();
+        writer.commit();
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildInBackground() {
+        taskExecutor.execute(() -> {
+            try {
+                rebuild();
+            } catch (IOException | RuntimeException e) {
+                // a context shut down mid-rebuild fails here too, that is not worth a warning
+                if (!closed) {
+                    LOGGER.warn("book search index rebuild failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Makes the refreshes since the last commit durable. Between commits they
+     * are only in the near-real-time reader and would not survive a crash.
+     */
+    @Scheduled(
+        initialDelayString = "${library.search.commit-interval-ms:60000}",
+        fixedDelayString = "${library.search.commit-interval-ms:60000}"
+    )
+    public void commit() throws IOException {
+        if (!closed && writer.hasUncommittedChanges()) {
+            writer.commit();
+        }
+    }
+
+    /**
+     * Ranked matches of {@code text} against names and authors. Every word
+     * must match, the last one as a prefix since it may still be being typed,
+     * the others exactly or within a small edit distance.
+     */
+    public List<BookSuggestionDao> search(String text, int limit) throws IOException {
+        List<String> words = analyze(text);
+
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+
+        for (int i = 0; i < words.size(); i++) {
+            query.add(wordQuery(words.get(i), i == words.size() - 1), BooleanClause.Occur.MUST);
+        }
+
+        IndexSearcher searcher = searcherManager.acquire();
+
+        try {
+            List<BookSuggestionDao> suggestions = new ArrayList<>(limit);
+
+            for (ScoreDoc hit : searcher.search(query.build(), limit).scoreDocs) {
+                Document document = searcher.doc(hit.doc);
+                suggestions.add(new BookSuggestionDao(
+                    document.get(ISBN), document.get(NAME), document.get(AUTHOR_NAME)
+                ));
+            }
+
+            return suggestions;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Queues {@code isbns} to be re-read from the database and indexed or
+     * removed in the background. Repeated ISBNs are coalesced.
+     */
+    public void refresh(Collection<String> isbns) {
+        pending.addAll(isbns);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (!pending.isEmpty() && draining.compareAndSet(false, true)) {
+            taskExecutor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+            Iterator<String> iterator = pending.iterator();
+
+            while (iterator.hasNext() && !closed) {
+                chunk.add(iterator.next());
+                iterator.remove();
+
+                if (chunk.size() == CHUNK_SIZE || !iterator.hasNext()) {
+                    refreshNow(chunk);
+                    chunk.clear();
+                    iterator = pending.iterator();
+                }
+            }
+        } catch (RuntimeException e) {
+            if (!closed) {
+                LOGGER.warn("book search index refresh failed", e);
+            }
+        } finally {
+            draining.set(false);
+        }
+
+        // ISBNs queued after the last check would otherwise wait for the next write
+        if (!closed) {
+            scheduleDrain();
+        }
+    }
+
+    private void refreshNow(Collection<String> isbns) {
+        Set<String> rebuilding = refreshedDuringRebuild;
+
+        if (rebuilding != null) {
+            rebuilding.addAll(isbns);
+        }
+
+        refreshLock.lock();
+
+        try {
+            List<String> chunk = new ArrayList<>(Math.min(isbns.size(), CHUNK_SIZE));
+
+            for (String isbn : isbns) {
+                chunk.add(isbn);
+
+                if (chunk.size() == CHUNK_SIZE) {
+                    refreshChunk(chunk);
+                    chunk.clear();
+                }
+            }
+
+            if (!chunk.isEmpty()) {
+                refreshChunk(chunk);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private void rebuild() throws IOException {
+        refreshedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+        Map<String, String> commitData = new HashMap<>();
+        writer.getLiveCommitData().forEach(entry -> commitData.put(entry.getKey(), entry.getValue()));
+
+        Date startedAt = new Date();
+        Date since = new Date(Long.parseLong(commitData.getOrDefault(MODIFIED_SINCE, "0")));
+
+        for (String shard : bookShards.getShards()) {
+            bookShards.read(shard, () -> new TransactionTemplate(transactionManager).execute(status -> {
+                try (Stream<BookSuggestionDao> books = booksRepository.streamSuggestionsModifiedSince(since)) {
+                    books.forEach(this::write);
+                }
+
+                return null;
+            }));
+        }
+
+        searcherManager.maybeRefreshBlocking();
+
+        // an index kept from a previous run may hold books deleted since, even if the counts happen to agree
+        if (since.getTime() > 0) {
+            removeDeleted();
+        }
+
+        Set<String> rebuilding = refreshedDuringRebuild;
+        refreshedDuringRebuild = null;
+        refreshNow(rebuilding);
+
+        commitData.put(MODIFIED_SINCE, String.valueOf(startedAt.getTime()));
+        writer.setLiveCommitData(commitData.entrySet());
+        writer.commit();
+
+        LOGGER.info("book search index ready with {} books", countIndexed());
+    }
+
+    private void refreshChunk(List<String> isbns) throws IOException {
+        Set<String> missing = new HashSet<>(isbns);
+
+        for (BookSuggestionDao book : bookShards.readByIsbn(isbns, booksRepository::findSuggestions)) {
+            write(book);
+            missing.remove(book.getIsbn());
+        }
+
+        for (String isbn : missing) {
+            writer.deleteDocuments(new Term(ISBN, isbn));
+        }
+    }
+
+    /**
+     * Drops indexed books that are no longer stored, e.g. deleted while the
+     * application was down.
+     */
+    private void removeDeleted() throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+
+        try {
+            List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+
+            for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                LeafReader reader = leaf.reader();
+                Bits live = reader.getLiveDocs();
+
+                for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                    if (live != null && !live.get(doc)) {
+                        continue;
+                    }
+
+                    chunk.add(reader.document(doc).get(ISBN));
+
+                    if (chunk.size() == CHUNK_SIZE) {
+                        removeMissing(chunk);
+                        chunk.clear();
+                    }
+                }
+            }
+
+            removeMissing(chunk);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private void removeMissing(List<String> isbns) throws IOException {
+        if (isbns.isEmpty()) {
+            return;
+        }
+
+        Set<String> missing = new HashSet<>(isbns);
+        missing.removeAll(bookShards.readByIsbn(isbns, booksRepository::findExistingIsbns));
+
+        for (String isbn : missing) {
+            writer.deleteDocuments(new Term(ISBN, isbn));
+        }
+    }
+
+    private int countIndexed() throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+
+        try {
+            IndexReader reader = searcher.getIndexReader();
+
+            return reader.numDocs();
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private void write(BookSuggestionDao book) {
+        Document document = new Document();
+        document.add(new StringField(ISBN, book.getIsbn(), Field.Store.YES));
+
+        if (book.getName() != null) {
+            document.add(new TextField(NAME, book.getName(), Field.Store.YES));
+        }
+
+        if (book.getAuthorName() != null) {
+            document.add(new TextField(AUTHOR_NAME, book.getAuthorName(), Field.Store.YES));
+        }
+
+        try {
+            writer.updateDocument(new Term(ISBN, book.getIsbn()), document);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private BooleanQuery wordQuery(String word, boolean last) {
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+
+        // a match on the name ranks above the same match on the author
+        addWordQueries(query, new Term(NAME, word), last, 2f);
+        addWordQueries(query, new Term(AUTHOR_NAME, word), last, 1f);
+
+        return query.build();
+    }
+
+    private static void addWordQueries(BooleanQuery.Builder query, Term term, boolean last, float boost) {
+        query.add(new BoostQuery(new TermQuery(term), 3 * boost), BooleanClause.Occur.SHOULD);
+
+        if (last) {
+            query.add(new BoostQuery(new PrefixQuery(term), 2 * boost), BooleanClause.Occur.SHOULD);
+        }
+
+        int length = term.text().length();
+
+        if (length >= 3) {
+            // the first letter must match, which keeps fuzzy expansion cheap
+            query.add(
+                new BoostQuery(new FuzzyQuery(term, length >= 6 ? 2 : 1, 1), boost),
+                BooleanClause.Occur.SHOULD
+            );
+        }
+    }
+
+    private List<String> analyze(String text) throws IOException {
+        List<String> words = new ArrayList<>();
+
+        try (TokenStream tokens = analyzer.tokenStream(NAME, text)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+
+            while (tokens.incrementToken()) {
+                words.add(term.toString());
+            }
+
+            tokens.end();
+        }
+
+        return words;
+    }
+}
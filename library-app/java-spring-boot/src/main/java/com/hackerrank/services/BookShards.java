@@ -0,0 +1,528 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.services;
+
+import com.hackerrank.datasource.ShardRoutingDataSource;
+import com.hackerrank.metrics.StatementCounter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.relational.SchemaManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Where books live. Unsharded there is a single shard, the primary, and
+ * every method runs its work on the calling thread in whatever transaction
+ * the caller has, exactly as if it called the repositories itself.
+ *
+ * With library.shards.urls set, a book lives on the shard picked by the
+ * CRC32 of its ISBN modulo the number of shards, and work for a shard runs
+ * in its own transaction on a virtual thread bound to that shard, so it
+ * never shares a persistence context or connection with the caller. Work
+ * spanning shards runs on all of them in parallel, and each shard commits
+ * or rolls back on its own, so writers get one outcome per shard. Nothing
+ * commits across databases: callers write books first and record what the
+ * committed shards wrote on the primary after, so a failure in between
+ * leaves counters for the reconciliation to correct.
+ * Changing the number of shards requires moving the books by hand.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Service
+public class BookShards {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookShards.class);
+
+    /**
+     * Rows a shard cursor reads ahead of its consumer, the persistence
+     * context of the shard is cleared after each of these many.
+     */
+    private static final int CURSOR_BUFFER_SIZE = 500;
+
+    @Autowired(required = false)
+    private ShardRoutingDataSource routingDataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private List<String> shards = Collections.singletonList(ShardRoutingDataSource.PRIMARY);
+
+    private ExecutorService executor;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private TransactionTemplate transaction;
+
+    @PostConstruct
+    public void open() {
+        if (routingDataSource == null) {
+            return;
+        }
+
+        shards = new ArrayList<>(routingDataSource.getShards().keySet());
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("book-shard-", 0).factory());
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        transaction = new TransactionTemplate(transactionManager);
+
+        createSchemas();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public boolean isSharded() {
+        return routingDataSource != null;
+    }
+
+    /**
+     * Shard names in hash order.
+     */
+    public List<String> getShards() {
+        return shards;
+    }
+
+    public String shardOf(String isbn) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+
+        CRC32 hash = new CRC32();
+        hash.update(isbn.getBytes(StandardCharsets.UTF_8));
+
+        return shards.get((int) (hash.getValue() % shards.size()));
+    }
+
+    /**
+     * {@code items} grouped by the shard of their ISBN, in shard order and
+     * keeping their order within a shard.
+     */
+    public <T> Map<String, List<T>> partition(Collection<T> items, Function<? super T, String> isbnOf) {
+        Map<String, List<T>> partitions = new LinkedHashMap<>();
+
+        for (String shard : shards) {
+            partitions.put(shard, new ArrayList<>());
+        }
+
+        for (T item : items) {
+            partitions.get(shardOf(isbnOf.apply(item))).add(item);
+        }
+
+        partitions.values().removeIf(List::isEmpty);
+
+        return partitions;
+    }
+
+    public Map<String, List<String>> partition(Collection<String> isbns) {
+        return partition(isbns, Function.identity());
+    }
+
+    /**
+     * Runs {@code work} against {@code shard}, sharded in a read-only
+     * transaction of its own.
+     */
+    public <T> T read(String shard, Supplier<T> work) {
+        return isSharded() ? join(submit(shard, readOnlyTransaction, work)) : work.get();
+    }
+
+    /**
+     * Runs {@code work} against {@code shard}, sharded in a read-write
+     * transaction of its own that has committed when this returns.
+     */
+    public <T> T write(String shard, Supplier<T> work) {
+        return isSharded() ? join(submit(shard, transaction, work)) : work.get();
+    }
+
+    /**
+     * Forward-only cursor over what {@code query} streams from {@code shard}.
+     * Unsharded it is the caller's own stream. Sharded the query runs in a
+     * read-only transaction of its own, a bounded buffer ahead of the caller,
+     * and its rows are handed over detached so the caller consumes them on
+     * its own thread. The cursor must be closed.
+     */
+    public <T> Cursor<T> stream(String shard, Supplier<Stream<T>> query) {
+        if (!isSharded()) {
+            Stream<T> rows = query.get();
+
+            return new Cursor<>(rows.iterator(), rows::close);
+        }
+
+        Handover<T> handover = new Handover<>(shard);
+        Future<Void> reader = submit(shard, readOnlyTransaction, () -> handover.fill(query, entityManager));
+
+        return new Cursor<>(handover, () -> {
+            handover.closed = true;
+            reader.cancel(true);
+        });
+    }
+
+    /**
+     * Scatter-gather: the results of {@code work} run against every shard,
+     * in shard order.
+     */
+    public <T> List<T> readEach(Supplier<T> work) {
+        return readAll(everyShard(), ignored -> work.get());
+    }
+
+    public <T> List<Outcome<T>> writeEach(Supplier<T> work) {
+        return writeAll(everyShard(), ignored -> work.get());
+    }
+
+    /**
+     * The results of {@code work} applied to each shard's part, in shard
+     * order. Parts are typically made by partition.
+     */
+    public <P, T> List<T> readAll(Map<String, P> parts, Function<P, T> work) {
+        List<T> results = new ArrayList<>(parts.size());
+        runAll(parts, readOnlyTransaction, work).forEach(outcome -> results.add(outcome.get()));
+
+        return results;
+    }
+
+    /**
+     * What {@code work} applied to each shard's part left, in shard order.
+     * Sharded, a shard that failed has rolled back while the others stay
+     * committed; unsharded the work shares the caller's transaction and a
+     * failure is thrown as it happens.
+     */
+    public <P, T> List<Outcome<T>> writeAll(Map<String, P> parts, Function<P, T> work) {
+        List<Outcome<T>> outcomes = runAll(parts, transaction, work);
+
+        for (Outcome<T> outcome : outcomes) {
+            if (outcome.isFailed()) {
+                LOGGER.warn("book writes on shard {} rolled back", outcome.getShard(), outcome.getFailure());
+            }
+        }
+
+        return outcomes;
+    }
+
+    /**
+     * Partitions {@code isbns} and concatenates what {@code work} reads for
+     * each shard's ISBNs.
+     */
+    public <T> List<T> readByIsbn(Collection<String> isbns, Function<List<String>, ? extends Collection<T>> work) {
+        List<T> results = new ArrayList<>();
+        readAll(partition(isbns), work).forEach(results::addAll);
+
+        return results;
+    }
+
+    private <P, T> List<Outcome<T>> runAll(Map<String, P> parts, TransactionTemplate template, Function<P, T> work) {
+        List<Outcome<T>> outcomes = new ArrayList<>(parts.size());
+
+        if (!isSharded()) {
+            parts.forEach((shard, part) -> outcomes.add(new Outcome<>(shard, work.apply(part), null)));
+
+            return outcomes;
+        }
+
+        Map<String, Future<T>> futures = new LinkedHashMap<>();
+        parts.forEach((shard, part) -> futures.put(shard, submit(shard, template, () -> work.apply(part))));
+
+        // every shard is waited for, a failed one must not leave others running unobserved
+        futures.forEach((shard, future) -> {
+            try {
+                outcomes.add(new Outcome<>(shard, join(future), null));
+            } catch (RuntimeException e) {
+                outcomes.add(new Outcome<>(shard, null, e));
+            }
+        });
+
+        return outcomes;
+    }
+
+    private Map<String, Void> everyShard() {
+        Map<String, Void> parts = new LinkedHashMap<>();
+        shards.forEach(shard -> parts.put(shard, null));
+
+        return parts;
+    }
+
+    private <T> Future<T> submit(String shard, TransactionTemplate template, Supplier<T> work) {
+        // the shard's statements count towards the caller's request
+        StatementCounter.Log log = StatementCounter.current();
+
+        return executor.submit(() -> {
+            StatementCounter.Log previous = StatementCounter.install(log);
+
+            try {
+                return routingDataSource.call(shard, () -> template == null
+                    ? work.get()
+                    : template.execute(status -> work.get())
+                );
+            } finally {
+                StatementCounter.install(previous);
+            }
+        });
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for a book shard", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Gives every shard the schema Hibernate created on the primary, when it
+     * created one.
+     */
+    private void createSchemas() {
+        Object action = entityManagerFactory.getProperties().get(AvailableSettings.HBM2DDL_AUTO);
+
+        if (action == null || !action.toString().startsWith("create")) {
+            return;
+        }
+
+        SchemaManager schemaManager = entityManagerFactory.unwrap(SessionFactory.class).getSchemaManager();
+
+        for (String shard : shards) {
+            join(submit(shard, null, () -> {
+                schemaManager.dropMappedObjects(true);
+                schemaManager.exportMappedObjects(true);
+
+                return null;
+            }));
+        }
+    }
+
+    /**
+     * What work run against one shard left: its result, or the failure its
+     * transaction rolled back on.
+     */
+    public static final class Outcome<T> {
+        private final String shard;
+
+        private final T result;
+
+        private final RuntimeException failure;
+
+        private Outcome(String shard, T result, RuntimeException failure) {
+            this.shard = shard;
+            this.result = result;
+            this.failure = failure;
+        }
+
+        public String getShard() {
+            return shard;
+        }
+
+        public T getResult() {
+            return result;
+        }
+
+        public RuntimeException getFailure() {
+            return failure;
+        }
+
+        public boolean isFailed() {
+            return failure != null;
+        }
+
+        /**
+         * The result, or the failure thrown.
+         */
+        public T get() {
+            if (failure != null) {
+                throw failure;
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Rows of one shard read in order, closed once done with.
+     */
+    public static final class Cursor<T> implements Iterator<T>, AutoCloseable {
+        private final Iterator<T> rows;
+
+        private final Runnable onClose;
+
+        private Cursor(Iterator<T> rows, Runnable onClose) {
+            this.rows = rows;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return rows.hasNext();
+        }
+
+        @Override
+        public T next() {
+            return rows.next();
+        }
+
+        @Override
+        public void close() {
+            onClose.run();
+        }
+    }
+
+    /**
+     * Hands the rows a shard reads over to the thread consuming them. Each
+     * row travels as an outcome, and an outcome with neither a result nor a
+     * failure ends the rows.
+     */
+    private static final class Handover<T> implements Iterator<T> {
+        private final String shard;
+
+        private final BlockingQueue<Outcome<T>> buffer = new ArrayBlockingQueue<>(CURSOR_BUFFER_SIZE);
+
+        private volatile boolean closed;
+
+        private Outcome<T> head;
+
+        Handover(String shard) {
+            this.shard = shard;
+        }
+
+        /**
+         * Reads the rows on the shard's thread until they run out or the
+         * cursor is closed.
+         */
+        Void fill(Supplier<Stream<T>> query, EntityManager entityManager) {
+            int handed = 0;
+
+            try (Stream<T> rows = query.get()) {
+                Iterator<T> iterator = rows.iterator();
+
+                while (iterator.hasNext()) {
+                    if (!offer(new Outcome<>(shard, iterator.next(), null))) {
+                        return null;
+                    }
+
+                    if (++handed % CURSOR_BUFFER_SIZE == 0) {
+                        entityManager.clear();
+                    }
+                }
+            } catch (RuntimeException e) {
+                offer(new Outcome<>(shard, null, e));
+
+                return null;
+            }
+
+            offer(new Outcome<>(shard, null, null));
+
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (head == null) {
+                head = take();
+            }
+
+            if (head.isFailed()) {
+                throw head.getFailure();
+            }
+
+            return head.getResult() != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            T row = head.getResult();
+            head = null;
+
+            return row;
+        }
+
+        /**
+         * Waits for room in the buffer, false once the cursor is closed.
+         */
+        private boolean offer(Outcome<T> outcome) {
+            try {
+                while (!buffer.offer(outcome, 100, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        return false;
+                    }
+                }
+
+                return true;
+            } catch (InterruptedException e) {
+                // closing the cursor interrupts the reader, its read-only transaction just ends
+                return false;
+            }
+        }
+
+        private Outcome<T> take() {
+            try {
+                return buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted reading a book shard", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.services;
+
+import com.hackerrank.dao.BookDao;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * One queued single-book create or update. The group commit marks it
+ * applied or rejected, or failed when its shard rolled back, and it
+ * completes once the group's transaction has ended, with the book as the
+ * write left it or the status to answer with.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class BookWrite {
+    private final String isbn;
+
+    private final BookDao book;
+
+    private final boolean create;
+
+    private final CompletableFuture<BookDao> completion = new CompletableFuture<>();
+
+    private BookDao result;
+
+    private ResponseStatusException rejection;
+
+    private RuntimeException failure;
+
+    private BookWrite(String isbn, BookDao book, boolean create) {
+        this.isbn = isbn;
+        this.book = book;
+        this.create = create;
+    }
+
+    public static BookWrite create(BookDao book) {
+        return new BookWrite(book.getIsbn(), book, true);
+    }
+
+    public static BookWrite update(String isbn, BookDao book) {
+        return new BookWrite(isbn, book, false);
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public BookDao getBook() {
+        return book;
+    }
+
+    public boolean isCreate() {
+        return create;
+    }
+
+    public CompletableFuture<BookDao> getCompletion() {
+        return completion;
+    }
+
+    void applied(BookDao result) {
+        this.result = result;
+        this.rejection = null;
+        this.failure = null;
+    }
+
+    void rejected(HttpStatus status, String reason) {
+        this.result = null;
+        this.rejection = new ResponseStatusException(status, reason);
+        this.failure = null;
+    }
+
+    /**
+     * Marks the write as not committed, whatever the group recorded for it.
+     */
+    void failed(RuntimeException failure) {
+        this.failure = failure;
+    }
+
+    boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Completes with the outcome recorded by the committed group.
+     */
+    void complete() {
+        if (failure != null) {
+            completion.completeExceptionally(failure);
+        } else if (rejection != null) {
+            completion.completeExceptionally(rejection);
+        } else {
+            completion.complete(result);
+        }
+    }
+}
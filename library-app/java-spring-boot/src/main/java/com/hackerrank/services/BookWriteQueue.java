@@ -0,0 +1,321 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.services;
+
+import com.hackerrank.dao.BookDao;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Write-behind queue for single-book creates and updates. Writes to an ISBN
+ * already waiting join its entry, and one writer thread commits whatever has
+ * queued up as a group, in one transaction per shard, every few
+ * milliseconds. A write completes after its shard has committed and the
+ * cached body and search index entry of its book have been refreshed.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Service
+public class BookWriteQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookWriteQueue.class);
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private BookResponseCache responseCache;
+
+    @Autowired
+    private BookSearchIndex searchIndex;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${library.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${library.write-behind.capacity:10000}")
+    private int capacity;
+
+    @Value("${library.write-behind.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${library.write-behind.max-group-size:1000}")
+    private int maxGroupSize;
+
+    @Value("${library.write-behind.timeout-ms:30000}")
+    private long timeoutMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * Queued writes by ISBN, in the order each ISBN was first queued.
+     */
+    private final Map<String, List<BookWrite>> pending = new LinkedHashMap<>();
+
+    private volatile int size;
+
+    private boolean running;
+
+    private Thread writer;
+
+    private DistributionSummary groupSizes;
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("library.write_behind.queued", this, queue -> queue.size)
+            .description("Book writes waiting for a group commit")
+            .register(meterRegistry);
+        groupSizes = DistributionSummary.builder("library.write_behind.group.size")
+            .description("Book writes per group commit")
+            .register(meterRegistry);
+
+        running = true;
+        writer = new Thread(this::run, "book-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops taking writes and waits for the ones already queued to commit.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        lock.lock();
+
+        try {
+            running = false;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    /**
+     * Whether POST /books and PUT /books/{isbn} go through the queue without
+     * being asked to.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * How long a request waits for its write to commit before giving up on
+     * the answer. The write itself stays queued.
+     */
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * Queues a write, or rejects it with 503 while the queue is full.
+     */
+    public CompletableFuture<BookDao> submit(BookWrite write) {
+        if (write.getIsbn() == null) {
+            write.rejected(HttpStatus.BAD_REQUEST, "isbn is required");
+            write.complete();
+
+            return write.getCompletion();
+        }
+
+        lock.lock();
+
+        try {
+            if (!running || size >= capacity) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "write queue is full");
+            }
+
+            pending.computeIfAbsent(write.getIsbn(), isbn -> new ArrayList<>()).add(write);
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        return write.getCompletion();
+    }
+
+    private void run() {
+        try {
+            while (awaitWrites()) {
+                linger();
+
+                List<BookWrite> group = drain();
+
+                try {
+                    groupSizes.record(group.size());
+                    commit(group);
+                } catch (Throwable e) {
+                    LOGGER.error("group commit of {} book writes failed", group.size(), e);
+                    // completing a write twice is a no-op, so this only reaches the ones left waiting
+                    group.forEach(write -> write.getCompletion().completeExceptionally(e));
+                }
+            }
+        } finally {
+            // a writer that is gone takes no more writes and leaves none waiting
+            List<BookWrite> left;
+
+            lock.lock();
+
+            try {
+                running = false;
+                left = new ArrayList<>();
+                pending.values().forEach(left::addAll);
+                pending.clear();
+                size = 0;
+            } finally {
+                lock.unlock();
+            }
+
+            ResponseStatusException stopped = new ResponseStatusException(
+                HttpStatus.SERVICE_UNAVAILABLE,
+                "book writer stopped"
+            );
+            left.forEach(write -> write.getCompletion().completeExceptionally(stopped));
+        }
+    }
+
+    /**
+     * Lets the writes of a burst gather into one group. The writer is only
+     * stopped through {@link #stop()}, so an interrupt just cuts the wait
+     * short and is cleared rather than left to end every later one at once.
+     */
+    private void linger() {
+        try {
+            Thread.sleep(lingerMs);
+        } catch (InterruptedException e) {
+            LOGGER.debug("book writer interrupted while lingering");
+        }
+    }
+
+    /**
+     * Blocks until something is queued, false once stopped with nothing left.
+     */
+    private boolean awaitWrites() {
+        lock.lock();
+
+        try {
+            while (running && pending.isEmpty()) {
+                notEmpty.awaitUninterruptibly();
+            }
+
+            return !pending.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes whole ISBN entries, oldest first, until the group is full.
+     */
+    private List<BookWrite> drain() {
+        List<BookWrite> group = new ArrayList<>();
+
+        lock.lock();
+
+        try {
+            Iterator<List<BookWrite>> entries = pending.values().iterator();
+
+            while (entries.hasNext() && group.size() < maxGroupSize) {
+                group.addAll(entries.next());
+                entries.remove();
+            }
+
+            size -= group.size();
+        } finally {
+            lock.unlock();
+        }
+
+        return group;
+    }
+
+    /**
+     * Commits a group and completes the writes that landed. Writes whose
+     * shard rolled back, or all of them if the group failed as a whole, are
+     * retried one book at a time, so one bad row fails only its own book.
+     */
+    private void commit(List<BookWrite> group) {
+        try {
+            booksService.applyAll(group);
+        } catch (RuntimeException e) {
+            LOGGER.warn("group commit of {} book writes failed", group.size(), e);
+            group.forEach(write -> write.failed(e));
+        }
+
+        List<BookWrite> committed = group.stream().filter(write -> !write.isFailed()).collect(toList());
+
+        if (!committed.isEmpty()) {
+            refresh(committed.stream().map(BookWrite::getIsbn).distinct().collect(toList()));
+            committed.forEach(BookWrite::complete);
+        }
+
+        Map<String, List<BookWrite>> failed = group.stream()
+            .filter(BookWrite::isFailed)
+            .collect(groupingBy(BookWrite::getIsbn, LinkedHashMap::new, toList()));
+
+        if (failed.size() > 1) {
+            LOGGER.warn("retrying the writes of {} books one book at a time", failed.size());
+            failed.values().forEach(this::commit);
+        } else {
+            failed.values().forEach(writes -> writes.forEach(BookWrite::complete));
+        }
+    }
+
+    /**
+     * Drops the cached bodies and refreshes the search entries of committed
+     * books. The writes have committed either way, so a failure here is
+     * logged rather than reported as a failed write.
+     */
+    private void refresh(List<String> isbns) {
+        try {
+            responseCache.invalidate(isbns);
+        } catch (RuntimeException e) {
+            LOGGER.warn("invalidating the cached bodies of {} books failed", isbns.size(), e);
+        }
+
+        try {
+            searchIndex.refresh(isbns);
+        } catch (RuntimeException e) {
+            LOGGER.warn("refreshing the search entries of {} books failed", isbns.size(), e);
+        }
+    }
+}
@@ -0,0 +1,843 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.services;
+
+import com.hackerrank.dao.BookBatchItemDao;
+import com.hackerrank.dao.BookBatchResultDao;
+import com.hackerrank.dao.BookDao;
+import com.hackerrank.dao.LibraryTotalsDao;
+import com.hackerrank.models.Book;
+import com.hackerrank.models.Change;
+import com.hackerrank.models.Library;
+import com.hackerrank.repositories.BooksRepository;
+import com.hackerrank.repositories.LibrariesRepository;
+import com.hackerrank.services.BookShards.Outcome;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Book writes, each in one transaction, or with sharding one per shard
+ * followed by the primary's. Single-book operations signal a rejected
+ * request with a ResponseStatusException carrying the status the controller
+ * should answer with; batch operations report per-entry outcomes.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Service
+public class BooksService {
+    /**
+     * Entries validated together, bounding both IN-list sizes and the
+     * persistence context.
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private LibrariesRepository librariesRepository;
+
+    @Autowired
+    private LibraryCache libraryCache;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private BookShards bookShards;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int jdbcBatchSize;
+
+    @Transactional
+    public Book create(BookDao book) {
+        String isbn = book.getIsbn();
+        Long libraryId = book.getLibraryId();
+
+        if (isbn == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "isbn is required");
+        }
+
+        if (libraryId != null) {
+            findLibrary(libraryId);
+        }
+
+        Book newBook = bookShards.write(bookShards.shardOf(isbn), () -> {
+            if (booksRepository.existsById(isbn)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "isbn already exists");
+            }
+
+            Book created = new Book(book);
+
+            if (libraryId != null) {
+                // unsharded this is the library found above, on a shard a proxy that is never loaded
+                created.setLibrary(entityManager.getReference(Library.class, libraryId));
+            }
+
+            entityManager.persist(created);
+
+            return created;
+        });
+
+        CounterDeltas deltas = new CounterDeltas();
+        deltas.add(libraryId, 1, newBook.getSellingPrice());
+        deltas.apply(librariesRepository, libraryCache);
+        changeLog.record(Change.BOOK, isbn, Change.CREATED);
+
+        return newBook;
+    }
+
+    @Transactional
+    public Book update(String isbn, BookDao changes) {
+        Long libraryId = changes.getLibraryId();
+
+        if (libraryId != null) {
+            findLibrary(libraryId);
+        }
+
+        CounterDeltas deltas = new CounterDeltas();
+        Set<Long> leftLibraryIds = new HashSet<>();
+
+        Book updated = bookShards.write(bookShards.shardOf(isbn), () -> {
+            Book book = booksRepository.findById(isbn)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "book not found"));
+
+            deltas.add(libraryIdOf(book), -1, book.getSellingPrice());
+
+            book.setAuthorName(changes.getAuthorName());
+            book.setName(changes.getName());
+            book.setPublicationYear(changes.getPublicationYear());
+            book.setSellingPrice(changes.getSellingPrice());
+
+            if (libraryId != null) {
+                Long previousId = libraryIdOf(book);
+
+                if (previousId != null && !previousId.equals(libraryId)) {
+                    leftLibraryIds.add(previousId);
+                }
+
+                // moving a book only rewrites its foreign key, neither library's books are loaded
+                book.setLibrary(entityManager.getReference(Library.class, libraryId));
+            }
+
+            deltas.add(libraryIdOf(book), 1, book.getSellingPrice());
+            entityManager.flush();
+
+            return book;
+        });
+
+        touchAll(leftLibraryIds);
+        deltas.apply(librariesRepository, libraryCache);
+        changeLog.record(Change.BOOK, isbn, Change.UPDATED);
+
+        return updated;
+    }
+
+    @Transactional
+    public void delete(String isbn) {
+        CounterDeltas deltas = new CounterDeltas();
+        Set<Long> leftLibraryIds = new HashSet<>();
+
+        bookShards.write(bookShards.shardOf(isbn), () -> {
+            Book book = booksRepository.findById(isbn)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "book not found"));
+
+            leftLibraryIds.add(libraryIdOf(book));
+            deltas.add(libraryIdOf(book), -1, book.getSellingPrice());
+            booksRepository.delete(book);
+
+            return null;
+        });
+
+        leftLibraryIds.remove(null);
+        touchAll(leftLibraryIds);
+        deltas.apply(librariesRepository, libraryCache);
+        changeLog.record(Change.BOOK, isbn, Change.DELETED);
+    }
+
+    /**
+     * Applies queued single-book writes in one transaction per shard, in
+     * order. The books and libraries involved are resolved with one query
+     * each and the writes of one ISBN land on the same managed entity, so
+     * they flush as a single batched INSERT or UPDATE. A rejected write is
+     * marked on its entry and leaves the rest of the group alone. Writes on
+     * a shard that rolled back are marked failed and nothing of that shard
+     * is recorded, the other shards' writes stand.
+     */
+    @Transactional
+    public void applyAll(List<BookWrite> writes) {
+        Set<Long> libraryIds = writes.stream()
+            .map(write -> write.getBook().getLibraryId())
+            .filter(Objects::nonNull)
+            .collect(toSet());
+        Set<Long> existingLibraryIds = new HashSet<>();
+
+        for (List<Long> chunk : chunks(new ArrayList<>(libraryIds))) {
+            existingLibraryIds.addAll(librariesRepository.findExistingIds(chunk));
+        }
+
+        List<BookWrite> keyed = new ArrayList<>();
+
+        for (BookWrite write : writes) {
+            if (write.getIsbn() != null) {
+                keyed.add(write);
+            } else if (write.isCreate()) {
+                write.rejected(HttpStatus.BAD_REQUEST, "isbn is required");
+            } else {
+                write.rejected(HttpStatus.NOT_FOUND, "book not found");
+            }
+        }
+
+        Map<String, List<BookWrite>> parts = bookShards.partition(keyed, BookWrite::getIsbn);
+        List<ShardWrites> applied = new ArrayList<>();
+
+        for (Outcome<ShardWrites> outcome : bookShards.writeAll(parts, part -> applyShard(part, existingLibraryIds))) {
+            if (outcome.isFailed()) {
+                parts.get(outcome.getShard()).forEach(write -> write.failed(outcome.getFailure()));
+            } else {
+                applied.add(outcome.getResult());
+            }
+        }
+
+        record(applied);
+    }
+
+    private ShardWrites applyShard(List<BookWrite> writes, Set<Long> existingLibraryIds) {
+        ShardWrites shard = new ShardWrites();
+        Map<String, Book> books = new HashMap<>();
+        Set<String> isbns = writes.stream().map(BookWrite::getIsbn).collect(toSet());
+
+        for (List<String> chunk : chunks(new ArrayList<>(isbns))) {
+            booksRepository.findAllById(chunk).forEach(book -> books.put(book.getIsbn(), book));
+        }
+
+        for (BookWrite write : writes) {
+            BookDao changes = write.getBook();
+            Long libraryId = changes.getLibraryId();
+            Book book = books.get(write.getIsbn());
+
+            if (write.isCreate() && book != null) {
+                write.rejected(HttpStatus.BAD_REQUEST, "isbn already exists");
+                continue;
+            }
+
+            if (!write.isCreate() && book == null) {
+                write.rejected(HttpStatus.NOT_FOUND, "book not found");
+                continue;
+            }
+
+            if (libraryId != null && !existingLibraryIds.contains(libraryId)) {
+                write.rejected(HttpStatus.BAD_REQUEST, "library not found");
+                continue;
+            }
+
+            if (write.isCreate()) {
+                book = new Book(changes);
+
+                if (libraryId != null) {
+                    book.setLibrary(entityManager.getReference(Library.class, libraryId));
+                }
+
+                entityManager.persist(book);
+                books.put(book.getIsbn(), book);
+                shard.created.add(book.getIsbn());
+            } else {
+                shard.deltas.add(libraryIdOf(book), -1, book.getSellingPrice());
+
+                book.setAuthorName(changes.getAuthorName());
+                book.setName(changes.getName());
+                book.setPublicationYear(changes.getPublicationYear());
+                book.setSellingPrice(changes.getSellingPrice());
+
+                if (libraryId != null) {
+                    Long previousId = libraryIdOf(book);
+
+                    if (previousId != null && !previousId.equals(libraryId)) {
+                        shard.leftLibraryIds.add(previousId);
+                    }
+
+                    book.setLibrary(entityManager.getReference(Library.class, libraryId));
+                }
+
+                shard.updated.add(book.getIsbn());
+            }
+
+            shard.deltas.add(libraryIdOf(book), 1, book.getSellingPrice());
+            write.applied(new BookDao(book));
+        }
+
+        return shard;
+    }
+
+    /**
+     * Inserts every valid entry in one transaction per shard. Entries are
+     * consumed in chunks, so {@code books} may be a lazily parsed stream of
+     * any length. Entries whose shard rolled back are reported with 500 and
+     * only what the other shards committed is recorded.
+     */
+    @Transactional
+    public BookBatchResultDao createAll(Iterator<BookDao> books) {
+        BookBatchResultDao result = new BookBatchResultDao();
+        Set<String> seen = new HashSet<>();
+        List<BookDao> chunk = new ArrayList<>(CHUNK_SIZE);
+        CounterDeltas deltas = new CounterDeltas();
+
+        while (books.hasNext()) {
+            chunk.add(books.next());
+
+            if (chunk.size() == CHUNK_SIZE || !books.hasNext()) {
+                createChunk(chunk, seen, result, deltas);
+                chunk.clear();
+            }
+        }
+
+        deltas.apply(librariesRepository, libraryCache);
+
+        return result;
+    }
+
+    private void createChunk(List<BookDao> chunk, Set<String> seen, BookBatchResultDao result, CounterDeltas deltas) {
+        Set<String> isbns = chunk.stream()
+            .map(BookDao::getIsbn)
+            .filter(Objects::nonNull)
+            .collect(toSet());
+        Set<Long> libraryIds = chunk.stream()
+            .map(BookDao::getLibraryId)
+            .filter(Objects::nonNull)
+            .collect(toSet());
+
+        Set<String> existingIsbns = new HashSet<>(bookShards.readByIsbn(isbns, booksRepository::findExistingIsbns));
+        Set<Long> existingLibraryIds = libraryIds.isEmpty()
+            ? new HashSet<>()
+            : new HashSet<>(librariesRepository.findExistingIds(libraryIds));
+
+        List<BookDao> accepted = new ArrayList<>();
+        // the rejection of each entry in order, null where it is accepted
+        List<BookBatchItemDao> rejected = new ArrayList<>();
+
+        for (BookDao book : chunk) {
+            String isbn = book.getIsbn();
+            Long libraryId = book.getLibraryId();
+
+            if (isbn == null) {
+                rejected.add(new BookBatchItemDao(null, 400, "isbn is required"));
+            } else if (existingIsbns.contains(isbn) || !seen.add(isbn)) {
+                rejected.add(new BookBatchItemDao(isbn, 400, "isbn already exists"));
+            } else if (libraryId != null && !existingLibraryIds.contains(libraryId)) {
+                rejected.add(new BookBatchItemDao(isbn, 400, "library not found"));
+            } else {
+                accepted.add(book);
+                rejected.add(null);
+            }
+        }
+
+        Map<String, List<BookDao>> parts = bookShards.partition(accepted, BookDao::getIsbn);
+        Set<String> failed = new HashSet<>();
+
+        for (Outcome<Void> outcome : bookShards.writeAll(parts, this::insertShard)) {
+            if (outcome.isFailed()) {
+                parts.get(outcome.getShard()).forEach(book -> failed.add(book.getIsbn()));
+            }
+        }
+
+        Iterator<BookDao> acceptedBooks = accepted.iterator();
+        List<String> created = new ArrayList<>();
+
+        for (BookBatchItemDao rejection : rejected) {
+            if (rejection != null) {
+                result.add(rejection);
+                continue;
+            }
+
+            BookDao book = acceptedBooks.next();
+
+            if (failed.contains(book.getIsbn())) {
+                result.add(new BookBatchItemDao(book.getIsbn(), 500, "book shard write failed"));
+                continue;
+            }
+
+            deltas.add(book.getLibraryId(), 1, book.getSellingPrice());
+            created.add(book.getIsbn());
+            result.add(new BookBatchItemDao(book.getIsbn(), 201, null));
+            result.setCount(result.getCount() + 1);
+        }
+
+        changeLog.recordAll(Change.BOOK, created, Change.CREATED);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private Void insertShard(List<BookDao> books) {
+        int pending = 0;
+
+        for (BookDao book : books) {
+            Book newBook = new Book(book);
+
+            if (book.getLibraryId() != null) {
+                newBook.setLibrary(entityManager.getReference(Library.class, book.getLibraryId()));
+            }
+
+            // persist rather than save: the ISBN is assigned, so save would merge and SELECT first
+            entityManager.persist(newBook);
+
+            if (++pending % jdbcBatchSize == 0) {
+                entityManager.flush();
+            }
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+
+        return null;
+    }
+
+    /**
+     * Applies partial updates to many books in one transaction per shard.
+     * Entries carrying the same changes are written with one set-based
+     * UPDATE per chunk; one-off changes are loaded per chunk and flushed as
+     * batched updates. Only failed entries are reported back, those of a
+     * shard that rolled back with 500, and only what the other shards
+     * committed is recorded.
+     */
+    @Transactional
+    public BookBatchResultDao updateAll(List<BookDao> books) {
+        BookBatchResultDao result = new BookBatchResultDao();
+        Map<String, BookDao> valid = new LinkedHashMap<>();
+        Set<String> repeated = new HashSet<>();
+
+        for (BookDao book : books) {
+            if (book.getIsbn() == null) {
+                result.add(new BookBatchItemDao(null, 400, "isbn is required"));
+            } else if (valid.put(book.getIsbn(), book) != null) {
+                repeated.add(book.getIsbn());
+            }
+        }
+
+        for (String isbn : repeated) {
+            valid.remove(isbn);
+            result.add(new BookBatchItemDao(isbn, 400, "isbn repeated in batch"));
+        }
+
+        Set<String> existingIsbns = new HashSet<>(bookShards.readByIsbn(valid.keySet(), this::findExistingIsbns));
+
+        Set<Long> libraryIds = valid.values().stream()
+            .map(BookDao::getLibraryId)
+            .filter(Objects::nonNull)
+            .collect(toSet());
+        Set<Long> existingLibraryIds = new HashSet<>();
+
+        for (List<Long> chunk : chunks(new ArrayList<>(libraryIds))) {
+            existingLibraryIds.addAll(librariesRepository.findExistingIds(chunk));
+        }
+
+        Map<List<Object>, List<String>> groups = new LinkedHashMap<>();
+
+        for (BookDao book : valid.values()) {
+            if (!existingIsbns.contains(book.getIsbn())) {
+                result.add(new BookBatchItemDao(book.getIsbn(), 404, "book not found"));
+            } else if (book.getLibraryId() != null && !existingLibraryIds.contains(book.getLibraryId())) {
+                result.add(new BookBatchItemDao(book.getIsbn(), 400, "library not found"));
+            } else {
+                groups.computeIfAbsent(changesOf(book), key -> new ArrayList<>()).add(book.getIsbn());
+            }
+        }
+
+        Map<List<Object>, List<String>> shared = new LinkedHashMap<>();
+        List<String> singles = new ArrayList<>();
+
+        for (Map.Entry<List<Object>, List<String>> group : groups.entrySet()) {
+            List<String> isbns = group.getValue();
+
+            if (group.getKey().stream().allMatch(Objects::isNull)) {
+                // nothing to change, the books exist so they count as updated, but nothing is logged
+                result.setCount(result.getCount() + isbns.size());
+            } else if (isbns.size() == 1) {
+                singles.add(isbns.get(0));
+            } else {
+                shared.put(group.getKey(), isbns);
+            }
+        }
+
+        List<String> written = new ArrayList<>();
+        shared.values().forEach(written::addAll);
+        written.addAll(singles);
+
+        Map<String, List<String>> parts = bookShards.partition(written);
+        List<ShardWrites> updated = new ArrayList<>();
+        Set<String> failed = new HashSet<>();
+
+        List<Outcome<ShardWrites>> outcomes = bookShards.writeAll(
+            parts,
+            isbns -> updateShard(new HashSet<>(isbns), shared, singles, valid)
+        );
+
+        for (Outcome<ShardWrites> outcome : outcomes) {
+            if (outcome.isFailed()) {
+                failed.addAll(parts.get(outcome.getShard()));
+            } else {
+                updated.add(outcome.getResult());
+            }
+        }
+
+        valid.keySet().stream()
+            .filter(failed::contains)
+            .forEachOrdered(isbn -> result.add(new BookBatchItemDao(isbn, 500, "book shard write failed")));
+        result.setCount(result.getCount() + record(updated));
+
+        return result;
+    }
+
+    /**
+     * The share of a batch update held by one shard: its members of every
+     * shared group, then its one-off changes.
+     */
+    private ShardWrites updateShard(
+        Set<String> held,
+        Map<List<Object>, List<String>> shared,
+        List<String> singles,
+        Map<String, BookDao> valid
+    ) {
+        ShardWrites shard = new ShardWrites();
+
+        for (List<String> group : shared.values()) {
+            List<String> isbns = group.stream().filter(held::contains).collect(toList());
+            BookDao changes = valid.get(group.get(0));
+            boolean movesValue = changes.getLibraryId() != null || changes.getSellingPrice() != null;
+
+            for (List<String> chunk : chunks(isbns)) {
+                if (!movesValue) {
+                    shard.count += updateChunk(chunk, changes);
+                } else {
+                    // the counters shift by the chunk's totals after the update minus those before
+                    List<LibraryTotalsDao> before = booksRepository.findLibraryTotals(chunk);
+                    shard.count += updateChunk(chunk, changes);
+                    shard.deltas.subtract(before);
+                    shard.deltas.add(booksRepository.findLibraryTotals(chunk));
+
+                    if (changes.getLibraryId() != null) {
+                        before.forEach(totals -> shard.leftLibraryIds.add(totals.getLibraryId()));
+                    }
+                }
+
+                shard.updated.addAll(chunk);
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+
+        for (List<String> chunk : chunks(singles.stream().filter(held::contains).collect(toList()))) {
+            for (Book book : booksRepository.findAllById(chunk)) {
+                BookDao changes = valid.get(book.getIsbn());
+                shard.deltas.add(libraryIdOf(book), -1, book.getSellingPrice());
+
+                book.setAuthorName(changes.getAuthorName());
+                book.setName(changes.getName());
+                book.setPublicationYear(changes.getPublicationYear());
+                book.setSellingPrice(changes.getSellingPrice());
+
+                if (changes.getLibraryId() != null) {
+                    shard.leftLibraryIds.add(libraryIdOf(book));
+                    book.setLibrary(entityManager.getReference(Library.class, changes.getLibraryId()));
+                }
+
+                shard.deltas.add(libraryIdOf(book), 1, book.getSellingPrice());
+            }
+
+            shard.updated.addAll(chunk);
+            entityManager.flush();
+            entityManager.clear();
+            shard.count += chunk.size();
+        }
+
+        return shard;
+    }
+
+    /**
+     * Deletes many books in one transaction per shard with set-based
+     * deletes. Only unknown ISBNs are reported back, and those of a shard
+     * that rolled back with 500.
+     */
+    @Transactional
+    public BookBatchResultDao deleteAll(List<String> isbns) {
+        BookBatchResultDao result = new BookBatchResultDao();
+        List<String> distinct = isbns.stream().filter(Objects::nonNull).distinct().collect(toList());
+
+        Map<String, List<String>> parts = bookShards.partition(distinct);
+        List<ShardWrites> deleted = new ArrayList<>();
+        Set<String> failed = new HashSet<>();
+
+        for (Outcome<ShardWrites> outcome : bookShards.writeAll(parts, this::deleteShard)) {
+            if (outcome.isFailed()) {
+                failed.addAll(parts.get(outcome.getShard()));
+            } else {
+                deleted.add(outcome.getResult());
+            }
+        }
+
+        Set<String> removed = new HashSet<>();
+        deleted.forEach(shard -> removed.addAll(shard.deleted));
+
+        isbns.stream()
+            .distinct()
+            .filter(isbn -> !removed.contains(isbn))
+            .forEachOrdered(isbn -> result.add(failed.contains(isbn)
+                ? new BookBatchItemDao(isbn, 500, "book shard write failed")
+                : new BookBatchItemDao(isbn, 404, "book not found")
+            ));
+
+        result.setCount(record(deleted));
+
+        return result;
+    }
+
+    private ShardWrites deleteShard(List<String> isbns) {
+        ShardWrites shard = new ShardWrites();
+
+        for (List<String> chunk : chunks(isbns)) {
+            Set<String> existingIsbns = new HashSet<>(booksRepository.findExistingIsbns(chunk));
+
+            if (!existingIsbns.isEmpty()) {
+                List<LibraryTotalsDao> totals = booksRepository.findLibraryTotals(existingIsbns);
+                totals.forEach(libraryTotals -> shard.leftLibraryIds.add(libraryTotals.getLibraryId()));
+                shard.deltas.subtract(totals);
+
+                shard.count += booksRepository.deleteByIsbns(existingIsbns);
+                chunk.stream().filter(existingIsbns::contains).forEachOrdered(shard.deleted::add);
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+
+        return shard;
+    }
+
+    /**
+     * Records on the primary what the shards wrote: the counter shifts, the
+     * libraries books left and the change log.
+     *
+     * @return the number of books written
+     */
+    private int record(List<ShardWrites> shards) {
+        CounterDeltas deltas = new CounterDeltas();
+        Set<Long> leftLibraryIds = new HashSet<>();
+        int count = 0;
+
+        for (ShardWrites shard : shards) {
+            deltas.add(shard.deltas);
+            leftLibraryIds.addAll(shard.leftLibraryIds);
+            count += shard.count;
+
+            log(shard.created, Change.CREATED);
+            log(new ArrayList<>(shard.updated), Change.UPDATED);
+            log(shard.deleted, Change.DELETED);
+        }
+
+        // a library the book left and joined again in one batch is touched too, harmless
+        leftLibraryIds.remove(null);
+        touchAll(leftLibraryIds);
+        deltas.apply(librariesRepository, libraryCache);
+
+        return count;
+    }
+
+    private void log(List<String> isbns, String operation) {
+        for (List<String> chunk : chunks(isbns)) {
+            changeLog.recordAll(Change.BOOK, chunk, operation);
+            entityManager.flush();
+            entityManager.clear();
+        }
+    }
+
+    private List<String> findExistingIsbns(List<String> isbns) {
+        List<String> existing = new ArrayList<>();
+
+        for (List<String> chunk : chunks(isbns)) {
+            existing.addAll(booksRepository.findExistingIsbns(chunk));
+        }
+
+        return existing;
+    }
+
+    private int updateChunk(List<String> isbns, BookDao changes) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Book> update = builder.createCriteriaUpdate(Book.class);
+        Root<Book> book = update.from(Book.class);
+
+        if (changes.getAuthorName() != null) {
+            update.set(book.<String>get("authorName"), changes.getAuthorName());
+        }
+
+        if (changes.getName() != null) {
+            update.set(book.<String>get("name"), changes.getName());
+        }
+
+        if (changes.getPublicationYear() != null) {
+            update.set(book.<Integer>get("publicationYear"), changes.getPublicationYear());
+        }
+
+        if (changes.getSellingPrice() != null) {
+            update.set(book.<Float>get("sellingPrice"), changes.getSellingPrice());
+        }
+
+        if (changes.getLibraryId() != null) {
+            update.set(book.<Library>get("library"), entityManager.getReference(Library.class, changes.getLibraryId()));
+        }
+
+        // bulk updates bypass @Version and @PreUpdate, so the validators are maintained here
+        update.set(book.<Long>get("version"), builder.sum(book.<Long>get("version"), 1L));
+        update.set(book.<Date>get("lastModified"), new Date());
+        update.where(book.get("isbn").in(isbns));
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    private Library findLibrary(Long id) {
+        // served by the second-level cache when warm, Library.books stays unloaded
+        return librariesRepository.findById(id)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "library not found"));
+    }
+
+    private static Long libraryIdOf(Book book) {
+        return book.getLibrary() == null ? null : book.getLibrary().getId();
+    }
+
+    private void touchAll(Set<Long> libraryIds) {
+        Date now = new Date();
+
+        for (List<Long> chunk : chunks(new ArrayList<>(libraryIds))) {
+            librariesRepository.touch(chunk, now);
+        }
+
+        libraryCache.evict(libraryIds);
+    }
+
+    private static List<Object> changesOf(BookDao book) {
+        return Arrays.asList(
+            book.getAuthorName(),
+            book.getName(),
+            book.getPublicationYear(),
+            book.getSellingPrice(),
+            book.getLibraryId()
+        );
+    }
+
+    private static <T> List<List<T>> chunks(List<T> items) {
+        List<List<T>> chunks = new ArrayList<>();
+
+        for (int i = 0; i < items.size(); i += CHUNK_SIZE) {
+            chunks.add(items.subList(i, Math.min(i + CHUNK_SIZE, items.size())));
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Shifts of the per-library counters accumulated over one write, applied
+     * once per library in id order so concurrent writers lock libraries in
+     * the same order.
+     */
+    private static final class CounterDeltas {
+        private final SortedMap<Long, Long> counts = new TreeMap<>();
+
+        private final Map<Long, Double> values = new HashMap<>();
+
+        void add(Long libraryId, long count, Float sellingPrice) {
+            add(libraryId, count, sellingPrice == null ? 0.0 : count * (double) sellingPrice);
+        }
+
+        void add(List<LibraryTotalsDao> totals) {
+            totals.forEach(library -> add(library.getLibraryId(), library.getBookCount(), library.getSellingValue()));
+        }
+
+        void subtract(List<LibraryTotalsDao> totals) {
+            totals.forEach(library -> add(library.getLibraryId(), -library.getBookCount(), -library.getSellingValue()));
+        }
+
+        void add(CounterDeltas deltas) {
+            deltas.counts.forEach((libraryId, count) -> add(libraryId, count, deltas.values.get(libraryId)));
+        }
+
+        void apply(LibrariesRepository librariesRepository, LibraryCache libraryCache) {
+            List<Long> adjusted = new ArrayList<>();
+
+            counts.forEach((libraryId, count) -> {
+                double value = values.get(libraryId);
+
+                if (count != 0 || value != 0) {
+                    librariesRepository.adjustCounters(libraryId, count, value);
+                    adjusted.add(libraryId);
+                }
+            });
+
+            libraryCache.evict(adjusted);
+        }
+
+        private void add(Long libraryId, long count, double value) {
+            if (libraryId == null) {
+                return;
+            }
+
+            counts.merge(libraryId, count, Long::sum);
+            values.merge(libraryId, value, Double::sum);
+        }
+    }
+
+    /**
+     * What the book writes of one shard leave for the primary to record.
+     */
+    private static final class ShardWrites {
+        private final CounterDeltas deltas = new CounterDeltas();
+
+        private final Set<Long> leftLibraryIds = new HashSet<>();
+
+        private final List<String> created = new ArrayList<>();
+
+        private final Set<String> updated = new LinkedHashSet<>();
+
+        private final List<String> deleted = new ArrayList<>();
+
+        private int count;
+    }
+}
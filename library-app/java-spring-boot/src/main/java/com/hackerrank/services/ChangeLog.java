@@ -0,0 +1,239 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.services;
+
+import com.hackerrank.models.Change;
+import com.hackerrank.repositories.ChangesRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Transactional outbox of book and library writes, read in sequence order.
+ *
+ * Sequences are allocated when a change is recorded but become visible when
+ * its transaction commits, so a later sequence can commit first. Readers are
+ * therefore held below the lowest sequence still in flight: once a sequence
+ * has been served, no lower one can show up afterwards. The guard is held in
+ * memory, so every writer of the log must run in this process.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Service
+public class ChangeLog {
+    /**
+     * Guards allocation together with inFlight and highestAllocated, so a
+     * reader never sees a sequence allocated but not yet registered.
+     */
+    private final Lock sequenceLock = new ReentrantLock();
+
+    /**
+     * Lowest sequence of every record call whose transaction is still open.
+     */
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+
+    /**
+     * Highest sequence allocated, -1 until read from the table.
+     */
+    private long highestAllocated = -1;
+
+    private final AtomicLong completions = new AtomicLong();
+
+    private final Queue<Runnable> waiters = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    private ChangesRepository changesRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private TaskExecutor taskExecutor;
+
+    @Value("${library.changes.retention-hours:168}")
+    private long retentionHours;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(String entity, String key, String operation) {
+        recordAll(entity, Collections.singletonList(key), operation);
+    }
+
+    /**
+     * Appends one change per key to the caller's transaction. The rows are
+     * inserted on the caller's next flush, so callers that clear the
+     * persistence context flush first.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordAll(String entity, Collection<String> keys, String operation) {
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        Date now = new Date();
+        // one floor per transaction, so its changes become readable together
+        boolean first = !TransactionSynchronizationManager.hasResource(this);
+        Long floor = null;
+
+        sequenceLock.lock();
+
+        try {
+            initialize();
+
+            for (String key : keys) {
+                Change change = new Change(entity, key, operation, now);
+                entityManager.persist(change);
+
+                if (first && floor == null) {
+                    floor = change.getId();
+                    inFlight.add(floor);
+                }
+
+                highestAllocated = Math.max(highestAllocated, change.getId());
+            }
+        } finally {
+            sequenceLock.unlock();
+        }
+
+        if (!first) {
+            return;
+        }
+
+        Long registered = floor;
+
+        TransactionSynchronizationManager.bindResource(this, registered);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(ChangeLog.this);
+                // a rollback leaves a gap but may still unblock changes committed behind it
+                complete(registered);
+            }
+        });
+    }
+
+    /**
+     * Up to {@code limit} committed changes after {@code since}, stopping
+     * short of any sequence still in flight. Read-write on purpose, which
+     * keeps it on the primary: a lagging replica would hide changes below
+     * the floor and the reader would move past them for good.
+     */
+    @Transactional
+    public List<Change> read(long since, int limit) {
+        long until;
+
+        sequenceLock.lock();
+
+        try {
+            initialize();
+            until = inFlight.isEmpty() ? highestAllocated : inFlight.first() - 1;
+        } finally {
+            sequenceLock.unlock();
+        }
+
+        if (until <= since) {
+            return Collections.emptyList();
+        }
+
+        return changesRepository.findRange(since, until, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Number of recording transactions completed so far, observed before a
+     * read that may come back empty.
+     */
+    public long getCompletions() {
+        return completions.get();
+    }
+
+    /**
+     * Runs {@code waiter} on the task executor after the next recording
+     * transaction completes, or right away if one completed since
+     * {@code observed}.
+     */
+    public void onCompletion(long observed, Runnable waiter) {
+        waiters.add(waiter);
+
+        if (completions.get() != observed) {
+            wake();
+        }
+    }
+
+    public void cancel(Runnable waiter) {
+        waiters.remove(waiter);
+    }
+
+    @Scheduled(
+        initialDelayString = "${library.changes.prune-interval-ms:3600000}",
+        fixedDelayString = "${library.changes.prune-interval-ms:3600000}"
+    )
+    @Transactional
+    public int prune() {
+        return changesRepository.deleteCreatedBefore(
+            new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours))
+        );
+    }
+
+    private void initialize() {
+        if (highestAllocated < 0) {
+            highestAllocated = changesRepository.findMaxId();
+        }
+    }
+
+    private void complete(Long floor) {
+        sequenceLock.lock();
+
+        try {
+            inFlight.remove(floor);
+        } finally {
+            sequenceLock.unlock();
+        }
+
+        completions.incrementAndGet();
+        wake();
+    }
+
+    private void wake() {
+        Runnable waiter;
+
+        while ((waiter = waiters.poll()) != null) {
+            taskExecutor.execute(waiter);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.services;
+
+import com.hackerrank.dao.JobDao;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+
+/**
+ * In-process registry of background jobs, run on the application task
+ * executor or tracked while running elsewhere. Finished jobs are forgotten
+ * after the retention period.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Service
+public class JobsService {
+    private final Map<String, JobDao> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private TaskExecutor taskExecutor;
+
+    @Value("${library.jobs.retention-ms:3600000}")
+    private long retentionMs;
+
+    public JobDao submit(String type, Supplier<?> task) {
+        prune();
+
+        JobDao job = new JobDao(UUID.randomUUID().toString(), type);
+        jobs.put(job.getId(), job);
+
+        taskExecutor.execute(() -> {
+            job.setStatus(JobDao.RUNNING);
+
+            try {
+                job.setResult(task.get());
+                job.setStatus(JobDao.SUCCEEDED);
+            } catch (RuntimeException e) {
+                job.setError(e.getMessage());
+                job.setStatus(JobDao.FAILED);
+            } finally {
+                job.setFinishedAt(System.currentTimeMillis());
+            }
+        });
+
+        return job;
+    }
+
+    /**
+     * Registers a job for work already under way elsewhere, finished when
+     * {@code stage} completes.
+     */
+    public JobDao track(String type, CompletionStage<?> stage) {
+        prune();
+
+        JobDao job = new JobDao(UUID.randomUUID().toString(), type);
+        job.setStatus(JobDao.RUNNING);
+        jobs.put(job.getId(), job);
+
+        stage.whenComplete((result, error) -> {
+            job.setFinishedAt(System.currentTimeMillis());
+
+            if (error == null) {
+                job.setResult(result);
+                job.setStatus(JobDao.SUCCEEDED);
+            } else {
+                job.setError(error.getMessage());
+                job.setStatus(JobDao.FAILED);
+            }
+        });
+
+        return job;
+    }
+
+    public JobDao find(String id) {
+        return jobs.get(id);
+    }
+
+    private void prune() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt() < cutoff);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.services;
+
+import com.hackerrank.dao.LibraryTotalsDao;
+import com.hackerrank.models.Book;
+import com.hackerrank.models.Change;
+import com.hackerrank.models.Library;
+import com.hackerrank.repositories.BooksRepository;
+import com.hackerrank.repositories.LibrariesRepository;
+import com.hackerrank.services.BookShards.Outcome;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Service
+public class LibrariesService {
+    /**
+     * Largest difference between a library's total_selling_value and the
+     * summed prices of its books still taken as no drift.
+     */
+    private static final double COUNTER_VALUE_TOLERANCE = 1e-6;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private LibrariesRepository librariesRepository;
+
+    @Autowired
+    private LibraryCache libraryCache;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private BookShards bookShards;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Transactional
+    public Library create(Library library) {
+        librariesRepository.save(library);
+        changeLog.record(Change.LIBRARY, String.valueOf(library.getId()), Change.CREATED);
+
+        return library;
+    }
+
+    /**
+     * The library with its books loaded, or null if there is no such library.
+     */
+    @Transactional(readOnly = true)
+    public Library findWithBooks(Long id) {
+        Library library = librariesRepository.findById(id).orElse(null);
+
+        return library == null ? null : withBooks(library);
+    }
+
+    /**
+     * Loads the books of a library read in the caller's transaction. Sharded,
+     * they are gathered from every shard over the library_id index and the
+     * library is detached first, so the gathered set is never flushed.
+     */
+    public Library withBooks(Library library) {
+        if (!bookShards.isSharded()) {
+            Hibernate.initialize(library.getBooks());
+
+            return library;
+        }
+
+        Set<Book> books = new HashSet<>();
+        bookShards.readEach(() -> booksRepository.findByLibraryId(library.getId(), Pageable.unpaged()).getContent())
+            .forEach(books::addAll);
+
+        entityManager.detach(library);
+        library.setBooks(books);
+
+        return library;
+    }
+
+    /**
+     * Unlinks the library's books and deletes it with set-based statements in
+     * one transaction, without loading Library.books. Every unlinked book is
+     * logged as updated. Sharded, the books are unlinked on each shard first
+     * and stay unlinked if the library turns out to be missing. If a shard
+     * rolls back, the library is kept with the books of that shard: the ones
+     * unlinked elsewhere are logged and taken off its counters, and a 500 is
+     * thrown once that has been recorded.
+     *
+     * Shards have no foreign key to the primary, so a book created for the
+     * library on a shard after that shard was unlinked, but before the
+     * library row is deleted, keeps the deleted library's id. Counters
+     * ignore it, and updating the book to another library repairs it.
+     *
+     * @return false if there was no such library
+     */
+    @Transactional(noRollbackFor = ResponseStatusException.class)
+    public boolean delete(Long id) {
+        List<String> isbns = new ArrayList<>();
+        List<LibraryTotalsDao> unlinked = new ArrayList<>();
+        RuntimeException failure = null;
+
+        for (Outcome<Unlinked> outcome : bookShards.writeEach(() -> unlink(id))) {
+            if (outcome.isFailed()) {
+                failure = failure == null ? outcome.getFailure() : failure;
+            } else {
+                isbns.addAll(outcome.getResult().isbns);
+                unlinked.addAll(outcome.getResult().totals);
+            }
+        }
+
+        if (failure != null) {
+            for (LibraryTotalsDao totals : unlinked) {
+                librariesRepository.adjustCounters(id, -totals.getBookCount(), -totals.getSellingValue());
+            }
+
+            librariesRepository.touch(Collections.singletonList(id), new Date());
+            libraryCache.evict(Collections.singletonList(id));
+            changeLog.recordAll(Change.BOOK, isbns, Change.UPDATED);
+
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "book shard write failed", failure);
+        }
+
+        if (librariesRepository.deleteByIdDirectly(id) == 0) {
+            return false;
+        }
+
+        changeLog.recordAll(Change.BOOK, isbns, Change.UPDATED);
+        changeLog.record(Change.LIBRARY, String.valueOf(id), Change.DELETED);
+
+        return true;
+    }
+
+    /**
+     * Recomputes every library's book_count and total_selling_value from its
+     * books. The counters are kept exact by the book writes themselves, this
+     * only corrects drift, e.g. from rows changed outside the application.
+     * The library rows are locked first, so book writes wait to adjust the
+     * counters until the corrected ones commit, and only libraries whose
+     * counters drifted are rewritten, with a new version so their validators
+     * change. Sharded, a book whose shard committed before its totals were
+     * read but whose counters were not adjusted yet is counted twice until
+     * the next run.
+     *
+     * @return the number of libraries reconciled
+     */
+    @Scheduled(
+        initialDelayString = "${library.counters.reconcile-interval-ms:300000}",
+        fixedDelayString = "${library.counters.reconcile-interval-ms:300000}"
+    )
+    @Transactional
+    public int reconcileCounters() {
+        List<LibraryTotalsDao> counters = librariesRepository.lockAllCounters();
+        Map<Long, LibraryTotalsDao> totals = new HashMap<>();
+
+        for (List<LibraryTotalsDao> shard : bookShards.readEach(booksRepository::findAllLibraryTotals)) {
+            for (LibraryTotalsDao library : shard) {
+                totals.merge(library.getLibraryId(), library, (a, b) -> new LibraryTotalsDao(
+                    a.getLibraryId(),
+                    a.getBookCount() + b.getBookCount(),
+                    a.getSellingValue() + b.getSellingValue()
+                ));
+            }
+        }
+
+        Date now = new Date();
+        List<Long> drifted = new ArrayList<>();
+
+        for (LibraryTotalsDao library : counters) {
+            LibraryTotalsDao books = totals.getOrDefault(
+                library.getLibraryId(),
+                new LibraryTotalsDao(library.getLibraryId(), 0L, 0.0)
+            );
+
+            // summed in another order than the counters were shifted in, so the value may differ in its last bits
+            if (books.getBookCount().equals(library.getBookCount())
+                && Math.abs(books.getSellingValue() - library.getSellingValue()) < COUNTER_VALUE_TOLERANCE) {
+                continue;
+            }
+
+            librariesRepository.setCounters(library.getLibraryId(), books.getBookCount(), books.getSellingValue(), now);
+            drifted.add(library.getLibraryId());
+        }
+
+        libraryCache.evict(drifted);
+
+        return counters.size();
+    }
+
+    private Unlinked unlink(Long id) {
+        // unsharded a failure rolls the whole delete back, so the totals are only needed on shards
+        Unlinked unlinked = new Unlinked(
+            booksRepository.findIsbnsByLibraryId(id),
+            bookShards.isSharded() ? booksRepository.findLibraryTotalsByLibraryId(id) : Collections.emptyList()
+        );
+        booksRepository.detachFromLibrary(id, new Date());
+
+        return unlinked;
+    }
+
+    /**
+     * The books one shard unlinked from a library.
+     */
+    private static final class Unlinked {
+        private final List<String> isbns;
+
+        private final List<LibraryTotalsDao> totals;
+
+        Unlinked(List<String> isbns, List<LibraryTotalsDao> totals) {
+            this.isbns = isbns;
+            this.totals = totals;
+        }
+    }
+}
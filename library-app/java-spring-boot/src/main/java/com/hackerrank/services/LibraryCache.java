@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.services;
+
+import com.hackerrank.models.Library;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps the second-level cache of Library in step with the native counter
+ * and version updates of LibrariesRepository, which Hibernate does not
+ * track. Only the libraries updated are evicted, once as the update runs
+ * and again when its transaction has ended, so a copy loaded in between
+ * does not outlive it.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@Component
+public class LibraryCache {
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    public void evict(Collection<Long> ids) {
+        List<Long> evicted = new ArrayList<>(ids);
+
+        evictNow(evicted);
+        afterCompletion(() -> evictNow(evicted));
+    }
+
+    public void evictAll() {
+        Cache cache = entityManagerFactory.getCache();
+
+        cache.evict(Library.class);
+        afterCompletion(() -> cache.evict(Library.class));
+    }
+
+    private void evictNow(List<Long> ids) {
+        Cache cache = entityManagerFactory.getCache();
+
+        for (Long id : ids) {
+            cache.evict(Library.class, id);
+        }
+    }
+
+    private static void afterCompletion(Runnable eviction) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                eviction.run();
+            }
+        });
+    }
+}
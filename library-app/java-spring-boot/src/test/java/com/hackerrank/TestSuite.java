@@ -28,7 +28,11 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
     LibrariesControllerTest.class,
     BooksControllerTest.class,
-    BooksAndLibrariesControllerTest.class
+    BooksAndLibrariesControllerTest.class,
+    ReactiveRoutesTest.class,
+    ReplicaRoutingTest.class,
+    ShardingTest.class,
+    WriteBehindTest.class
 })
 public class TestSuite {
 
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.load;
+
+import com.hackerrank.dao.BookDao;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic catalog, the same seed always yields the same libraries and books.
+ *
+ * Book counts per library follow a Zipf distribution with exponent {@code skew}, so a few libraries hold most of the
+ * catalog the way real branches do. A skew of 0 spreads the books evenly.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public class CatalogFixture {
+    private final int libraryCount;
+
+    private final int bookCount;
+
+    private final double skew;
+
+    private final long seed;
+
+    public CatalogFixture(int libraryCount, int bookCount, double skew, long seed) {
+        this.libraryCount = libraryCount;
+        this.bookCount = bookCount;
+        this.skew = skew;
+        this.seed = seed;
+    }
+
+    public int getLibraryCount() {
+        return libraryCount;
+    }
+
+    public int getBookCount() {
+        return bookCount;
+    }
+
+    /**
+     * Number of books assigned to each library, in library order, summing to the catalog size.
+     */
+    public int[] bookCounts() {
+        double[] weights = new double[libraryCount];
+        double total = 0;
+
+        for (int i = 0; i < libraryCount; i++) {
+            weights[i] = 1.0 / Math.pow(i + 1, skew);
+            total += weights[i];
+        }
+
+        int[] counts = new int[libraryCount];
+        int assigned = 0;
+
+        for (int i = 0; i < libraryCount; i++) {
+            counts[i] = (int) (bookCount * weights[i] / total);
+            assigned += counts[i];
+        }
+
+        // rounding leftovers go to the largest library
+        counts[0] += bookCount - assigned;
+
+        return counts;
+    }
+
+    /**
+     * Books of the whole catalog, given the ids the libraries were created with.
+     */
+    public List<BookDao> books(List<Long> libraryIds) {
+        Random random = new Random(seed);
+        int[] counts = bookCounts();
+        List<BookDao> books = new ArrayList<>(bookCount);
+        int sequence = 0;
+
+        for (int i = 0; i < libraryCount; i++) {
+            for (int j = 0; j < counts[i]; j++) {
+                books.add(book(isbn(sequence++), libraryIds.get(i), random));
+            }
+        }
+
+        return books;
+    }
+
+    public static String isbn(long sequence) {
+        return String.format("978%010d", sequence);
+    }
+
+    public static BookDao book(String isbn, Long libraryId, Random random) {
+        BookDao book = new BookDao();
+        book.setIsbn(isbn);
+        book.setName("book-" + isbn);
+        book.setAuthorName("author-" + random.nextInt(5000));
+        book.setPublicationYear(1900 + random.nextInt(120));
+        book.setSellingPrice(1 + random.nextInt(10000) / 100.0f);
+        book.setLibraryId(libraryId);
+
+        return book;
+    }
+}
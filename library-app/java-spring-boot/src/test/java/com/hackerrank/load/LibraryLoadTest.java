@@ -0,0 +1,404 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hackerrank.Application;
+import com.hackerrank.dao.BookDao;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
+
+/**
+ * Mixed read/write HTTP workload against a seeded catalog, reporting latency percentiles and throughput.
+ *
+ * Excluded from the default test run, start it with {@code mvn test -P load-test}. Every setting below can be
+ * overridden on the command line, e.g. {@code -Dload.books=200000 -Dload.mix=show=90,index=10}. Compare
+ * platform and virtual request threads with {@code -Dspring.threads.virtual.enabled=true} and enough
+ * {@code -Dload.threads} to exceed Tomcat's pool.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class LibraryLoadTest {
+    @ClassRule
+    public static final SpringClassRule springClassRule = new SpringClassRule();
+
+    @Rule
+    public final SpringMethodRule springMethodRule = new SpringMethodRule();
+
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    private static final int PAGE_LIMIT = 100;
+
+    private enum Operation {
+        SHOW, INDEX, CREATE, UPDATE, DESTROY
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Value("${load.libraries:50}")
+    private int libraryCount;
+
+    @Value("${load.books:20000}")
+    private int bookCount;
+
+    @Value("${load.skew:1.0}")
+    private double skew;
+
+    @Value("${load.seed:42}")
+    private long seed;
+
+    @Value("${load.threads:8}")
+    private int threads;
+
+    @Value("${load.warmup-seconds:5}")
+    private int warmupSeconds;
+
+    @Value("${load.duration-seconds:30}")
+    private int durationSeconds;
+
+    @Value("${load.mix:show=70,index=10,create=10,update=8,destroy=2}")
+    private String mix;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    private final ConcurrentLinkedQueue<String> created = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private List<Long> libraryIds;
+
+    @Test
+    public void mixedWorkload() throws Exception {
+        CatalogFixture catalog = new CatalogFixture(libraryCount, bookCount, skew, seed);
+        long seedStart = System.nanoTime();
+        seed(catalog);
+
+        System.out.printf(
+            "seeded %d libraries (largest %d books) and %d books in %d ms, %d clients, %s request threads%n",
+            libraryCount, catalog.bookCounts()[0], bookCount,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart), threads,
+            virtualThreads ? "virtual" : "platform"
+        );
+
+        Map<Operation, Integer> weights = parseMix(mix);
+
+        run(weights, TimeUnit.SECONDS.toNanos(warmupSeconds), null);
+
+        Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new LatencyRecorder());
+        }
+
+        long elapsed = run(weights, TimeUnit.SECONDS.toNanos(durationSeconds), recorders);
+        report(recorders, elapsed);
+
+        assertEquals(0, errors.get());
+        assertTrue(recorders.values().stream().mapToInt(LatencyRecorder::size).sum() > 0);
+    }
+
+    private void seed(CatalogFixture catalog) throws Exception {
+        libraryIds = new ArrayList<>(catalog.getLibraryCount());
+
+        for (int i = 0; i < catalog.getLibraryCount(); i++) {
+            ResponseEntity<String> response = restTemplate.postForEntity(
+                url("/libraries"), json("{\"name\": \"library-" + i + "\"}"), String.class
+            );
+
+            assertEquals(201, response.getStatusCode().value());
+            libraryIds.add(mapper.readTree(response.getBody()).get("id").asLong());
+        }
+
+        List<BookDao> books = catalog.books(libraryIds);
+
+        for (int from = 0; from < books.size(); from += SEED_BATCH_SIZE) {
+            List<BookDao> batch = books.subList(from, Math.min(books.size(), from + SEED_BATCH_SIZE));
+            ResponseEntity<String> response = restTemplate.postForEntity(
+                url("/books/batch"), json(mapper.writeValueAsString(batch)), String.class
+            );
+
+            assertEquals(200, response.getStatusCode().value());
+            assertEquals(batch.size(), mapper.readTree(response.getBody()).get("count").asInt());
+        }
+
+        nextSequence.set(books.size());
+    }
+
+    /**
+     * Drives the workload from all threads until the deadline, recording latencies only when recorders are given.
+     */
+    private long run(Map<Operation, Integer> weights, long durationNanos, Map<Operation, LatencyRecorder> recorders)
+        throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+
+        try {
+            List<Future<Map<Operation, LatencyRecorder>>> workers = new ArrayList<>();
+
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> work(weights, deadline)));
+            }
+
+            for (Future<Map<Operation, LatencyRecorder>> worker : workers) {
+                Map<Operation, LatencyRecorder> local = worker.get();
+
+                if (recorders != null) {
+                    local.forEach((operation, recorder) -> recorders.get(operation).addAll(recorder));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private Map<Operation, LatencyRecorder> work(Map<Operation, Integer> weights, long deadline) {
+        Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new LatencyRecorder());
+        }
+
+        int totalWeight = weights.values().stream().mapToInt(Integer::intValue).sum();
+        Random random = ThreadLocalRandom.current();
+
+        while (System.nanoTime() < deadline) {
+            Operation operation = pick(weights, random.nextInt(totalWeight));
+            long start = System.nanoTime();
+            Operation performed;
+
+            try {
+                performed = perform(operation, random);
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+                continue;
+            }
+
+            recorders.get(performed).record(System.nanoTime() - start);
+        }
+
+        return recorders;
+    }
+
+    private Operation perform(Operation operation, Random random) {
+        int status;
+
+        switch (operation) {
+            case SHOW:
+                status = restTemplate.getForEntity(url("/books/" + seededIsbn(random)), String.class)
+                    .getStatusCode().value();
+                break;
+
+            case INDEX:
+                String cursor = Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(seededIsbn(random).getBytes(StandardCharsets.UTF_8));
+                status = restTemplate.getForEntity(
+                    url("/books?limit=" + PAGE_LIMIT + "&after=" + cursor), String.class
+                ).getStatusCode().value();
+                break;
+
+            case UPDATE:
+                status = restTemplate.exchange(
+                    url("/books/" + seededIsbn(random)), HttpMethod.PUT,
+                    json("{\"selling_price\": " + (1 + random.nextInt(10000) / 100.0f) + "}"), String.class
+                ).getStatusCode().value();
+                break;
+
+            case DESTROY:
+                String isbn = created.poll();
+
+                // only books created during the run are destroyed, so reads always hit the seeded catalog
+                if (isbn != null) {
+                    status = restTemplate.exchange(url("/books/" + isbn), HttpMethod.DELETE, null, String.class)
+                        .getStatusCode().value();
+                    break;
+                }
+
+                operation = Operation.CREATE;
+                // falls through to create when nothing is left to destroy
+
+            case CREATE:
+            default:
+                String newIsbn = CatalogFixture.isbn(nextSequence.getAndIncrement());
+                BookDao book = CatalogFixture.book(newIsbn, libraryIds.get(random.nextInt(libraryIds.size())), random);
+                status = restTemplate.postForEntity(url("/books"), json(write(book)), String.class)
+                    .getStatusCode().value();
+
+                if (status == 201) {
+                    created.add(newIsbn);
+                }
+                break;
+        }
+
+        if (status >= 500) {
+            errors.incrementAndGet();
+        }
+
+        return operation;
+    }
+
+    private void report(Map<Operation, LatencyRecorder> recorders, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        LatencyRecorder all = new LatencyRecorder();
+
+        System.out.printf("%n%-8s %10s %10s %10s %10s %10s %10s%n", "op", "count", "rps", "p50 ms", "p99 ms",
+            "p999 ms", "max ms");
+
+        for (Map.Entry<Operation, LatencyRecorder> entry : recorders.entrySet()) {
+            all.addAll(entry.getValue());
+            print(entry.getKey().name().toLowerCase(), entry.getValue(), seconds);
+        }
+
+        print("total", all, seconds);
+        System.out.printf("errors: %d%n%n", errors.get());
+    }
+
+    private static void print(String label, LatencyRecorder recorder, double seconds) {
+        System.out.printf(
+            "%-8s %10d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+            label, recorder.size(), recorder.size() / seconds, recorder.percentile(0.5), recorder.percentile(0.99),
+            recorder.percentile(0.999), recorder.percentile(1.0)
+        );
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+        }
+
+        return weights;
+    }
+
+    private static Operation pick(Map<Operation, Integer> weights, int roll) {
+        for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+            roll -= entry.getValue();
+
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+
+        throw new IllegalStateException("roll exceeds the total weight");
+    }
+
+    private String seededIsbn(Random random) {
+        return CatalogFixture.isbn(random.nextInt(bookCount));
+    }
+
+    private String write(BookDao book) {
+        try {
+            return mapper.writeValueAsString(book);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + port + path;
+    }
+
+    private static HttpEntity<String> json(String body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        return new HttpEntity<>(body, headers);
+    }
+
+    /**
+     * Unsynchronized latency buffer, each worker owns one and they are merged after the run.
+     */
+    private static class LatencyRecorder {
+        private long[] samples = new long[1024];
+
+        private int size;
+
+        void record(long nanos) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+
+            samples[size++] = nanos;
+        }
+
+        void addAll(LatencyRecorder other) {
+            for (int i = 0; i < other.size; i++) {
+                record(other.samples[i]);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        double percentile(double quantile) {
+            if (size == 0) {
+                return 0;
+            }
+
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = Math.max(0, (int) Math.ceil(quantile * size) - 1);
+
+            return sorted[index] / 1e6;
+        }
+    }
+}
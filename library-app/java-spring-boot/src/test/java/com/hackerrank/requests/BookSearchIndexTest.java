@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.requests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hackerrank.Application;
+import com.hackerrank.services.BookSearchIndex;
+import java.io.File;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.FSDirectory;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * The autocomplete index kept in a directory across restarts.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest(
+    classes = Application.class,
+    properties = "library.search.index-path=" + BookSearchIndexTest.INDEX_PATH
+)
+@WebAppConfiguration
+public class BookSearchIndexTest {
+    static final String INDEX_PATH = "target/book-search-index-test";
+
+    @ClassRule
+    public static final SpringClassRule springClassRule = new SpringClassRule();
+
+    @Rule
+    public final SpringMethodRule springMethodRule = new SpringMethodRule();
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private BookSearchIndex searchIndex;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private static MockMvc mockMvc;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeClass
+    public static void clean() {
+        FileSystemUtils.deleteRecursively(new File(INDEX_PATH));
+    }
+
+    @Before
+    public void setup() {
+        mockMvc = webAppContextSetup(webApplicationContext).build();
+    }
+
+    @Test
+    public void commitRefreshesAndSweepDeletedBooksOnRebuild() throws Exception {
+        for (String isbn : new String[] {"5589197551341", "5589197551342"}) {
+            mockMvc.perform(
+                post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"isbn\": \"" + isbn + "\", \"name\": \"programming " + isbn + "\"}")
+            )
+            .andExpect(status().is(201));
+        }
+
+        assertEquals(2, awaitSuggestions("prog", 2).size());
+
+        searchIndex.commit();
+
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(Paths.get(INDEX_PATH)))) {
+            assertEquals(2, reader.numDocs());
+        }
+
+        // one book deleted behind the index's back and one restored from before its last rebuild, so the count of
+        // indexed books still agrees with the count of stored ones
+        try (
+            Connection connection = dataSource.getConnection();
+            Statement statement = connection.createStatement()
+        ) {
+            statement.execute("delete from book where isbn = '5589197551341'");
+            statement.execute(
+                "insert into book (isbn, name, version, last_modified) "
+                    + "values ('5589197551343', 'restored 5589197551343', 0, timestamp '2001-01-01 00:00:00')"
+            );
+        }
+
+        searchIndex.rebuildInBackground();
+
+        List<JsonNode> found = awaitSuggestions("prog", 0);
+
+        for (int attempt = 0; attempt < 100 && found.size() > 1; attempt++) {
+            Thread.sleep(50);
+            found = awaitSuggestions("prog", 0);
+        }
+
+        assertEquals(1, found.size());
+        assertEquals("5589197551342", found.get(0).get("isbn").asText());
+    }
+
+    /**
+     * The suggestions for {@code q} once there are at least {@code count}, the index is near-real-time.
+     */
+    private List<JsonNode> awaitSuggestions(String q, int count) throws Exception {
+        List<JsonNode> found = new ArrayList<>();
+
+        for (int attempt = 0; attempt < 100 && (attempt == 0 || found.size() < count); attempt++) {
+            if (attempt > 0) {
+                Thread.sleep(50);
+            }
+
+            String data = mockMvc.perform(
+                get("/books/autocomplete?q=" + q)
+            )
+            .andExpect(status().is(200))
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+            found.clear();
+            mapper.readTree(data).forEach(found::add);
+        }
+
+        return found;
+    }
+}
@@ -18,10 +18,22 @@ package com.hackerrank.requests;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hackerrank.Application;
+import com.hackerrank.models.Book;
+import com.hackerrank.models.Library;
+import com.hackerrank.repositories.LibrariesRepository;
+import com.hackerrank.services.LibrariesService;
+import static com.hackerrank.requests.StatementBudget.assertStatementsAtMost;
+import jakarta.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
 import static java.util.stream.Collectors.toList;
 import java.util.stream.Stream;
+import javax.sql.DataSource;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
@@ -34,9 +46,14 @@ import org.springframework.test.context.junit4.rules.SpringClassRule;
 import org.springframework.test.context.junit4.rules.SpringMethodRule;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 import org.springframework.web.context.WebApplicationContext;
@@ -58,6 +75,12 @@ public class BooksAndLibrariesControllerTest {
     @Autowired
     private WebApplicationContext webApplicationContext;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
     private static MockMvc mockMvc;
 
     private final ObjectMapper mapper = new ObjectMapper();
@@ -287,4 +310,1088 @@ public class BooksAndLibrariesControllerTest {
 
         assertEquals(dataJson.get("library_id").asLong(), 0);
     }
+
+    @Test
+    public void createLibraryCreateBookAndExport() throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        String body = "{"
+            + "\"isbn\": \"5589197551341\","
+            + "\"name\": \"book-1\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 250.00,"
+            + "\"library_id\": 1"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        body = "{"
+            + "\"isbn\": \"5589197551342\","
+            + "\"name\": \"book-2\","
+            + "\"author_name\": \"author-2\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 350.00"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        String data = mockMvc.perform(
+            get("/books/export")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        JsonNode[] books = mapper.readValue(data, JsonNode[].class);
+
+        String[] actualIsbn = Stream.of(books)
+            .map(book -> book.get("isbn").asText() + ":" + book.get("library_id").asLong())
+            .sorted()
+            .collect(toList())
+            .toArray(new String[0]);
+
+        String[] expectedIsbn = new String[] {"5589197551341:1", "5589197551342:0"};
+
+        assertArrayEquals(expectedIsbn, actualIsbn);
+
+        data = mockMvc.perform(
+            get("/libraries/export")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        JsonNode[] libraries = mapper.readValue(data, JsonNode[].class);
+
+        assertEquals(libraries.length, 1);
+        assertEquals(libraries[0].get("name").asText(), "library-1");
+        assertEquals(libraries[0].get("books").get(0).get("isbn").asText(), "5589197551341");
+    }
+
+    @Test
+    public void exportLibrariesFromOneBookCursor() throws Exception {
+        for (int library = 1; library <= 3; library++) {
+            mockMvc.perform(
+                post("/libraries")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"library-" + library + "\"}")
+            )
+            .andExpect(status().is(201));
+        }
+
+        // library 2 holds nothing, the books of 1 and 3 are created interleaved
+        String[] isbns = {"5589197551341", "5589197551342", "5589197551343", "5589197551344", "5589197551345"};
+        long[] libraryIds = {3, 1, 3, 1, 3};
+
+        for (int i = 0; i < isbns.length; i++) {
+            String body = "{"
+                + "\"isbn\": \"" + isbns[i] + "\","
+                + "\"name\": \"book-" + i + "\","
+                + "\"author_name\": \"author-1\","
+                + "\"publication_year\": 2018,"
+                + "\"selling_price\": 10.00,"
+                + "\"library_id\": " + libraryIds[i]
+                + "}";
+
+            mockMvc.perform(
+                post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)
+            )
+            .andExpect(status().is(201));
+        }
+
+        entityManagerFactory.getCache().evictAll();
+
+        String data = mockMvc.perform(
+            get("/libraries/export")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        JsonNode[] libraries = mapper.readValue(data, JsonNode[].class);
+
+        assertEquals(3, libraries.length);
+        assertArrayEquals(new String[] {"5589197551342", "5589197551344"}, isbnsOf(libraries[0].get("books")));
+        assertEquals(0, libraries[1].get("books").size());
+        assertEquals("library-2", libraries[1].get("name").asText());
+        assertArrayEquals(
+            new String[] {"5589197551341", "5589197551343", "5589197551345"},
+            isbnsOf(libraries[2].get("books"))
+        );
+        assertEquals(3, libraries[2].get("book_count").asLong());
+
+        mockMvc.perform(
+            get("/books/export")
+        )
+        .andExpect(status().is(200));
+
+        // streamed rows bypass the second-level cache
+        for (String isbn : isbns) {
+            assertEquals(false, entityManagerFactory.getCache().contains(Book.class, isbn));
+        }
+    }
+
+    @Test
+    public void createLibraryCreateBookAndListLibraries() throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-2\"}")
+        )
+        .andExpect(status().is(201));
+
+        String body = "{"
+            + "\"isbn\": \"5589197551341\","
+            + "\"name\": \"book-1\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 250.00,"
+            + "\"library_id\": 1"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        body = "{"
+            + "\"isbn\": \"5589197551342\","
+            + "\"name\": \"book-2\","
+            + "\"author_name\": \"author-2\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 350.00,"
+            + "\"library_id\": 1"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        String data = mockMvc.perform(
+            get("/libraries")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        JsonNode[] libraries = mapper.readValue(data, JsonNode[].class);
+
+        assertEquals(libraries.length, 2);
+        assertEquals(libraries[0].get("id").asLong(), 1);
+        assertEquals(libraries[0].get("name").asText(), "library-1");
+        assertEquals(libraries[0].get("book_count").asLong(), 2);
+        assertEquals(libraries[1].get("id").asLong(), 2);
+        assertEquals(libraries[1].get("book_count").asLong(), 0);
+    }
+
+    @Test
+    public void createLibraryAndCreateBooksInBatch() throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"isbn\": \"5589197551341\", \"name\": \"book-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        String body = "["
+            + "{\"isbn\": \"5589197551342\", \"name\": \"book-2\", \"library_id\": 1},"
+            + "{\"isbn\": \"5589197551343\", \"name\": \"book-3\"},"
+            + "{\"isbn\": \"5589197551341\", \"name\": \"book-1\"},"
+            + "{\"isbn\": \"5589197551343\", \"name\": \"book-3\"},"
+            + "{\"isbn\": \"5589197551344\", \"name\": \"book-4\", \"library_id\": 2}"
+            + "]";
+
+        String data = mockMvc.perform(
+            post("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        JsonNode dataJson = mapper.readTree(data);
+
+        assertEquals(dataJson.get("count").asLong(), 2);
+
+        Integer[] actualStatus = Stream.of(mapper.readValue(dataJson.get("items").traverse(), JsonNode[].class))
+            .map(item -> item.get("status").asInt())
+            .collect(toList())
+            .toArray(new Integer[0]);
+
+        Integer[] expectedStatus = new Integer[] {201, 201, 400, 400, 400};
+
+        assertArrayEquals(expectedStatus, actualStatus);
+
+        data = mockMvc.perform(
+            get("/books/5589197551342")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals(mapper.readTree(data).get("library_id").asLong(), 1);
+
+        mockMvc.perform(
+            post("/books/batch")
+            .contentType("application/x-ndjson")
+            .content("{\"isbn\": \"5589197551345\"}\n{\"isbn\": \"5589197551346\"}\n")
+        )
+        .andExpect(status().is(200));
+
+        mockMvc.perform(
+            get("/books/5589197551346")
+        )
+        .andExpect(status().is(200));
+
+        mockMvc.perform(
+            post("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[{\"isbn\": ")
+        )
+        .andExpect(status().is(400));
+    }
+
+    @Test
+    public void createBooksUpdateAndDeleteInBatch() throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        String body = "["
+            + "{\"isbn\": \"5589197551341\", \"name\": \"book-1\", \"selling_price\": 250.00},"
+            + "{\"isbn\": \"5589197551342\", \"name\": \"book-2\", \"selling_price\": 250.00},"
+            + "{\"isbn\": \"5589197551343\", \"name\": \"book-3\", \"selling_price\": 250.00}"
+            + "]";
+
+        mockMvc.perform(
+            post("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(200));
+
+        body = "["
+            + "{\"isbn\": \"5589197551341\", \"selling_price\": 199.00, \"library_id\": 1},"
+            + "{\"isbn\": \"5589197551342\", \"selling_price\": 199.00, \"library_id\": 1},"
+            + "{\"isbn\": \"5589197551343\", \"name\": \"book-3, revised\"},"
+            + "{\"isbn\": \"5589197551349\", \"selling_price\": 199.00},"
+            + "{\"isbn\": \"5589197551348\", \"library_id\": 7},"
+            + "{\"isbn\": \"5589197551348\", \"library_id\": 1}"
+            + "]";
+
+        String data = mockMvc.perform(
+            put("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        JsonNode dataJson = mapper.readTree(data);
+
+        assertEquals(dataJson.get("count").asLong(), 3);
+
+        String[] actualFailures = Stream.of(mapper.readValue(dataJson.get("items").traverse(), JsonNode[].class))
+            .map(item -> item.get("isbn").asText() + ":" + item.get("status").asInt())
+            .sorted()
+            .collect(toList())
+            .toArray(new String[0]);
+
+        String[] expectedFailures = new String[] {"5589197551348:400", "5589197551349:404"};
+
+        assertArrayEquals(expectedFailures, actualFailures);
+
+        data = mockMvc.perform(
+            get("/books/5589197551342")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        dataJson = mapper.readTree(data);
+
+        assertEquals(dataJson.get("name").asText(), "book-2");
+        assertEquals(dataJson.get("selling_price").asDouble(), 199.00, 1e-6);
+        assertEquals(dataJson.get("library_id").asLong(), 1);
+
+        data = mockMvc.perform(
+            get("/books/5589197551343")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        dataJson = mapper.readTree(data);
+
+        assertEquals(dataJson.get("name").asText(), "book-3, revised");
+        assertEquals(dataJson.get("selling_price").asDouble(), 250.00, 1e-6);
+
+        data = mockMvc.perform(
+            delete("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[\"5589197551341\", \"5589197551343\", \"5589197551349\"]")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        dataJson = mapper.readTree(data);
+
+        assertEquals(dataJson.get("count").asLong(), 2);
+        assertEquals(dataJson.get("items").get(0).get("isbn").asText(), "5589197551349");
+
+        mockMvc.perform(
+            get("/books/5589197551341")
+        )
+        .andExpect(status().is(404));
+
+        mockMvc.perform(
+            get("/books/5589197551342")
+        )
+        .andExpect(status().is(200));
+    }
+
+    @Test
+    public void createLibrariesCreateBookAndMoveBook() throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-2\"}")
+        )
+        .andExpect(status().is(201));
+
+        String body = "{"
+            + "\"isbn\": \"5589197551341\","
+            + "\"name\": \"book-1\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 250.00,"
+            + "\"library_id\": 1"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        mockMvc.perform(
+            put("/books/5589197551341")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"library_id\": 3}")
+        )
+        .andExpect(status().is(400));
+
+        String data = mockMvc.perform(
+            put("/books/5589197551341")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"library_id\": 2}")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals(mapper.readTree(data).get("library_id").asLong(), 2);
+
+        data = mockMvc.perform(
+            get("/libraries/1")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals(mapper.readTree(data).get("books").size(), 0);
+
+        data = mockMvc.perform(
+            get("/libraries/2")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        JsonNode books = mapper.readTree(data).get("books");
+
+        assertEquals(books.size(), 1);
+        assertEquals(books.get(0).get("isbn").asText(), "5589197551341");
+    }
+
+    @Test
+    public void createLibraryCreateBookAndRevalidateLibrary() throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        String body = "{"
+            + "\"isbn\": \"5589197551341\","
+            + "\"name\": \"book-1\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 250.00,"
+            + "\"library_id\": 1"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        String etag = mockMvc.perform(
+            get("/libraries/1")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getHeader("ETag");
+
+        mockMvc.perform(
+            get("/libraries/1")
+            .header("If-None-Match", etag)
+        )
+        .andExpect(status().is(304));
+
+        mockMvc.perform(
+            put("/books/5589197551341")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"selling_price\": 350.00}")
+        )
+        .andExpect(status().is(200));
+
+        etag = mockMvc.perform(
+            get("/libraries/1")
+            .header("If-None-Match", etag)
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getHeader("ETag");
+
+        mockMvc.perform(
+            delete("/books/5589197551341")
+        )
+        .andExpect(status().is(200));
+
+        String data = mockMvc.perform(
+            get("/libraries/1")
+            .header("If-None-Match", etag)
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals(mapper.readTree(data).get("books").size(), 0);
+    }
+
+    @Test
+    public void createLibrariesCreateBooksWithinStatementBudget() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            mockMvc.perform(
+                post("/libraries")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"library-" + i + "\"}")
+            )
+            .andExpect(status().is(201));
+        }
+
+        StringBuilder body = new StringBuilder("[");
+
+        for (int i = 0; i < 9; i++) {
+            body.append(i == 0 ? "" : ",")
+                .append("{\"isbn\": \"558919755134").append(i).append("\",")
+                .append("\"name\": \"book-").append(i).append("\",")
+                .append("\"author_name\": \"author-1\",")
+                .append("\"publication_year\": 2018,")
+                .append("\"selling_price\": 250.00,")
+                .append("\"library_id\": ").append(i % 3 + 1).append("}");
+        }
+
+        mockMvc.perform(
+            post("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body.append("]").toString())
+        )
+        .andExpect(status().is(200));
+
+        assertStatementsAtMost(1, () -> mockMvc.perform(
+            get("/libraries")
+        )
+        .andExpect(status().is(200)));
+
+        assertStatementsAtMost(3, () -> mockMvc.perform(
+            get("/libraries/1")
+        )
+        .andExpect(status().is(200)));
+
+        assertStatementsAtMost(1, () -> mockMvc.perform(
+            get("/books")
+        )
+        .andExpect(status().is(200)));
+
+        // the book, the target library, the old library's validators, both libraries' counters and the change log
+        assertStatementsAtMost(6, () -> mockMvc.perform(
+            put("/books/5589197551340")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"library_id\": 2}")
+        )
+        .andExpect(status().is(200)));
+
+        // the unlinked ISBNs, the unlink, the delete and one batched change log insert
+        assertStatementsAtMost(4, () -> mockMvc.perform(
+            delete("/libraries/3")
+        )
+        .andExpect(status().is(200)));
+    }
+
+    @Test
+    public void createLibrariesCreateBooksAndPageLibraryBooks() throws Exception {
+        for (int i = 1; i <= 2; i++) {
+            mockMvc.perform(
+                post("/libraries")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"library-" + i + "\"}")
+            )
+            .andExpect(status().is(201));
+        }
+
+        for (int i = 0; i < 6; i++) {
+            String body = "{"
+                + "\"isbn\": \"558919755134" + i + "\","
+                + "\"name\": \"book-" + i + "\","
+                + "\"author_name\": \"author-1\","
+                + "\"publication_year\": 2018,"
+                + "\"selling_price\": " + (100 + i * 10) + ","
+                + "\"library_id\": " + (i < 5 ? 1 : 2)
+                + "}";
+
+            mockMvc.perform(
+                post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)
+            )
+            .andExpect(status().is(201));
+        }
+
+        String data = assertStatementsAtMost(2, () -> mockMvc.perform(
+            get("/libraries/1/books?size=2&sort=selling_price,desc")
+        )
+        .andExpect(status().is(200))
+        .andExpect(header().string("X-Total-Count", "5"))
+        .andReturn()
+        .getResponse()
+        .getContentAsString());
+
+        JsonNode[] books = mapper.readValue(data, JsonNode[].class);
+
+        assertEquals(books.length, 2);
+        assertEquals(books[0].get("isbn").asText(), "5589197551344");
+        assertEquals(books[1].get("isbn").asText(), "5589197551343");
+
+        data = mockMvc.perform(
+            get("/libraries/1/books?page=2&size=2&sort=selling_price,desc")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        books = mapper.readValue(data, JsonNode[].class);
+
+        assertEquals(books.length, 1);
+        assertEquals(books[0].get("isbn").asText(), "5589197551340");
+
+        data = mockMvc.perform(
+            get("/libraries/2/books")
+        )
+        .andExpect(status().is(200))
+        .andExpect(header().string("X-Total-Count", "1"))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        books = mapper.readValue(data, JsonNode[].class);
+
+        assertEquals(books.length, 1);
+        assertEquals(books[0].get("library_id").asLong(), 2);
+
+        mockMvc.perform(
+            get("/libraries/3/books")
+        )
+        .andExpect(status().is(404));
+
+        mockMvc.perform(
+            get("/libraries/1/books?sort=version")
+        )
+        .andExpect(status().is(400));
+
+        mockMvc.perform(
+            get("/libraries/1/books?sort=name,sideways")
+        )
+        .andExpect(status().is(400));
+    }
+
+    @Test
+    public void createLibrariesCreateBooksAndGetStats() throws Exception {
+        for (int i = 1; i <= 2; i++) {
+            mockMvc.perform(
+                post("/libraries")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"library-" + i + "\"}")
+            )
+            .andExpect(status().is(201));
+        }
+
+        int[][] books = {{2018, 100, 1}, {2018, 200, 1}, {2019, 300, 1}, {2018, 50, 2}};
+
+        for (int i = 0; i < books.length; i++) {
+            String body = "{"
+                + "\"isbn\": \"558919755134" + i + "\","
+                + "\"name\": \"book-" + i + "\","
+                + "\"author_name\": \"author-1\","
+                + "\"publication_year\": " + books[i][0] + ","
+                + "\"selling_price\": " + books[i][1] + ","
+                + "\"library_id\": " + books[i][2]
+                + "}";
+
+            mockMvc.perform(
+                post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)
+            )
+            .andExpect(status().is(201));
+        }
+
+        String data = assertStatementsAtMost(1, () -> mockMvc.perform(
+            get("/books/stats")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString());
+
+        JsonNode stats = mapper.readTree(data);
+
+        assertEquals(stats.get("count").asLong(), 4);
+        assertEquals(stats.get("min_selling_price").asDouble(), 50, 0.001);
+        assertEquals(stats.get("max_selling_price").asDouble(), 300, 0.001);
+        assertEquals(stats.get("avg_selling_price").asDouble(), 162.5, 0.001);
+        assertEquals(stats.get("publication_years").size(), 2);
+        assertEquals(stats.get("publication_years").get(0).get("publication_year").asInt(), 2018);
+        assertEquals(stats.get("publication_years").get(0).get("count").asLong(), 3);
+        assertEquals(stats.get("publication_years").get(1).get("publication_year").asInt(), 2019);
+        assertEquals(stats.get("publication_years").get(1).get("count").asLong(), 1);
+
+        data = mockMvc.perform(
+            get("/libraries/1/stats")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        stats = mapper.readTree(data);
+
+        assertEquals(stats.get("count").asLong(), 3);
+        assertEquals(stats.get("min_selling_price").asDouble(), 100, 0.001);
+        assertEquals(stats.get("avg_selling_price").asDouble(), 200, 0.001);
+        assertEquals(stats.get("publication_years").get(0).get("avg_selling_price").asDouble(), 150, 0.001);
+
+        mockMvc.perform(
+            get("/libraries/3/stats")
+        )
+        .andExpect(status().is(404));
+    }
+
+    @Test
+    public void createLibrariesWriteBooksAndMaintainCounters() throws Exception {
+        for (int i = 1; i <= 2; i++) {
+            mockMvc.perform(
+                post("/libraries")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"library-" + i + "\"}")
+            )
+            .andExpect(status().is(201));
+        }
+
+        for (int i = 1; i <= 2; i++) {
+            String body = "{"
+                + "\"isbn\": \"558919755134" + i + "\","
+                + "\"name\": \"book-" + i + "\","
+                + "\"selling_price\": " + i * 100 + ","
+                + "\"library_id\": 1"
+                + "}";
+
+            mockMvc.perform(
+                post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)
+            )
+            .andExpect(status().is(201));
+        }
+
+        assertCounters(new long[] {2, 0}, new double[] {300, 0});
+
+        mockMvc.perform(
+            put("/books/5589197551342")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"book-2\", \"selling_price\": 250.00, \"library_id\": 2}")
+        )
+        .andExpect(status().is(200));
+
+        assertCounters(new long[] {1, 1}, new double[] {100, 250});
+
+        mockMvc.perform(
+            post("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("["
+                + "{\"isbn\": \"5589197551343\", \"name\": \"book-3\", \"selling_price\": 50.00, \"library_id\": 2},"
+                + "{\"isbn\": \"5589197551344\", \"name\": \"book-4\", \"selling_price\": 50.00, \"library_id\": 2}"
+                + "]")
+        )
+        .andExpect(status().is(200));
+
+        assertCounters(new long[] {1, 3}, new double[] {100, 350});
+
+        mockMvc.perform(
+            put("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("["
+                + "{\"isbn\": \"5589197551343\", \"library_id\": 1},"
+                + "{\"isbn\": \"5589197551344\", \"library_id\": 1}"
+                + "]")
+        )
+        .andExpect(status().is(200));
+
+        assertCounters(new long[] {3, 1}, new double[] {200, 250});
+
+        mockMvc.perform(
+            delete("/books/5589197551341")
+        )
+        .andExpect(status().is(200));
+
+        mockMvc.perform(
+            delete("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[\"5589197551343\"]")
+        )
+        .andExpect(status().is(200));
+
+        assertCounters(new long[] {1, 1}, new double[] {50, 250});
+
+        assertEquals(webApplicationContext.getBean(LibrariesService.class).reconcileCounters(), 2);
+
+        assertCounters(new long[] {1, 1}, new double[] {50, 250});
+    }
+
+    @Test
+    public void reconcileDriftedCountersAndRevalidateTheirLibraries() throws Exception {
+        for (int i = 1; i <= 2; i++) {
+            mockMvc.perform(
+                post("/libraries")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"library-" + i + "\"}")
+            )
+            .andExpect(status().is(201));
+
+            mockMvc.perform(
+                post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"isbn\": \"558919755134" + i + "\", \"name\": \"book-" + i + "\", "
+                    + "\"selling_price\": 100.00, \"library_id\": " + i + "}")
+            )
+            .andExpect(status().is(201));
+        }
+
+        String[] etags = new String[2];
+
+        for (int i = 0; i < 2; i++) {
+            etags[i] = mockMvc.perform(
+                get("/libraries/" + (i + 1))
+            )
+            .andExpect(status().is(200))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+        }
+
+        // the first library's counters drift behind the application's back
+        try (
+            Connection connection = dataSource.getConnection();
+            Statement statement = connection.createStatement()
+        ) {
+            statement.execute("update library set book_count = 5, total_selling_value = 0.0 where id = 1");
+        }
+
+        webApplicationContext.getBean(LibrariesService.class).reconcileCounters();
+
+        assertCounters(new long[] {1, 1}, new double[] {100, 100});
+
+        mockMvc.perform(
+            get("/libraries/1")
+            .header("If-None-Match", etags[0])
+        )
+        .andExpect(status().is(200));
+
+        mockMvc.perform(
+            get("/libraries/2")
+            .header("If-None-Match", etags[1])
+        )
+        .andExpect(status().is(304));
+    }
+
+    @Test
+    public void createLibrariesWriteBookAndKeepOtherLibrariesCached() throws Exception {
+        for (int i = 1; i <= 2; i++) {
+            mockMvc.perform(
+                post("/libraries")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"library-" + i + "\"}")
+            )
+            .andExpect(status().is(201));
+        }
+
+        LibrariesRepository librariesRepository = webApplicationContext.getBean(LibrariesRepository.class);
+
+        for (long id = 1; id <= 2; id++) {
+            librariesRepository.findById(id);
+            assertTrue(entityManagerFactory.getCache().contains(Library.class, id));
+        }
+
+        String body = "{"
+            + "\"isbn\": \"5589197551341\","
+            + "\"name\": \"book-1\","
+            + "\"selling_price\": 100,"
+            + "\"library_id\": 1"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        // only the library whose counters moved leaves the second-level cache
+        assertFalse(entityManagerFactory.getCache().contains(Library.class, 1L));
+        assertTrue(entityManagerFactory.getCache().contains(Library.class, 2L));
+
+        assertCounters(new long[] {1, 0}, new double[] {100, 0});
+    }
+
+
+    @Test
+    public void createLibraryWriteBooksAndFollowChanges() throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        String body = "{"
+            + "\"isbn\": \"5589197551341\","
+            + "\"name\": \"book-1\","
+            + "\"selling_price\": 250.00,"
+            + "\"library_id\": 1"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        mockMvc.perform(
+            put("/books/5589197551341")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(200));
+
+        JsonNode feed = changes("/changes?timeout_ms=0");
+
+        String[] actualChanges = changesOf(feed);
+        String[] expectedChanges = new String[] {
+            "library:1:created",
+            "book:5589197551341:created",
+            "book:5589197551341:updated"
+        };
+
+        assertArrayEquals(expectedChanges, actualChanges);
+        assertEquals(feed.get("next_since").asLong(), feed.get("changes").get(2).get("sequence").asLong());
+
+        JsonNode first = changes("/changes?limit=1&timeout_ms=0");
+
+        assertEquals(first.get("changes").size(), 1);
+        assertEquals(first.get("next_since").asLong(), feed.get("changes").get(0).get("sequence").asLong());
+
+        long since = feed.get("next_since").asLong();
+
+        // nothing new yet, so the poll parks until the library deletion commits
+        MvcResult pending = mockMvc.perform(
+            get("/changes?since=" + since + "&timeout_ms=10000")
+        )
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+        mockMvc.perform(
+            delete("/libraries/1")
+        )
+        .andExpect(status().is(200));
+
+        String data = mockMvc.perform(
+            asyncDispatch(pending)
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        actualChanges = changesOf(mapper.readTree(data));
+        expectedChanges = new String[] {"book:5589197551341:updated", "library:1:deleted"};
+
+        assertArrayEquals(expectedChanges, actualChanges);
+
+        feed = changes("/changes?since=" + mapper.readTree(data).get("next_since").asLong() + "&timeout_ms=0");
+
+        assertEquals(feed.get("changes").size(), 0);
+
+        MvcResult rejected = mockMvc.perform(
+            get("/changes?limit=0")
+        )
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+        mockMvc.perform(
+            asyncDispatch(rejected)
+        )
+        .andExpect(status().is(400));
+    }
+
+    private JsonNode changes(String uri) throws Exception {
+        MvcResult result = mockMvc.perform(
+            get(uri)
+        )
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+        String data = mockMvc.perform(
+            asyncDispatch(result)
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        return mapper.readTree(data);
+    }
+
+    private static String[] isbnsOf(JsonNode books) {
+        String[] isbns = new String[books.size()];
+
+        for (int i = 0; i < isbns.length; i++) {
+            isbns[i] = books.get(i).get("isbn").asText();
+        }
+
+        Arrays.sort(isbns);
+
+        return isbns;
+    }
+
+    private static String[] changesOf(JsonNode feed) {
+        String[] changes = new String[feed.get("changes").size()];
+
+        for (int i = 0; i < changes.length; i++) {
+            JsonNode change = feed.get("changes").get(i);
+            changes[i] = change.get("entity").asText() + ":" + change.get("key").asText() + ":"
+                + change.get("operation").asText();
+        }
+
+        return changes;
+    }
+
+    private void assertCounters(long[] bookCounts, double[] totalSellingValues) throws Exception {
+        String data = mockMvc.perform(
+            get("/libraries")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        JsonNode[] libraries = mapper.readValue(data, JsonNode[].class);
+
+        for (int i = 0; i < libraries.length; i++) {
+            assertEquals(libraries[i].get("book_count").asLong(), bookCounts[i]);
+            assertEquals(libraries[i].get("total_selling_value").asDouble(), totalSellingValues[i], 1e-6);
+        }
+    }
 }
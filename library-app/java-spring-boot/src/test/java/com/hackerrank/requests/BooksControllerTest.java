@@ -18,10 +18,16 @@ package com.hackerrank.requests;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hackerrank.Application;
+import com.hackerrank.dao.BookDao;
+import com.hackerrank.services.BooksService;
 import static java.util.stream.Collectors.toList;
 import java.util.stream.Stream;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
@@ -34,13 +40,16 @@ import org.springframework.test.context.junit4.rules.SpringClassRule;
 import org.springframework.test.context.junit4.rules.SpringMethodRule;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.server.ResponseStatusException;
 
 /**
  * @author Abhimanyu Singh
@@ -59,6 +68,9 @@ public class BooksControllerTest {
     @Autowired
     private WebApplicationContext webApplicationContext;
 
+    @Autowired
+    private BooksService booksService;
+
     private static MockMvc mockMvc;
 
     private final ObjectMapper mapper = new ObjectMapper();
@@ -113,6 +125,31 @@ public class BooksControllerTest {
         .andExpect(status().is(400));
     }
 
+    @Test
+    public void createBookWithoutIsbn() throws Exception {
+        String body = "{"
+            + "\"name\": \"book-1\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 250.00"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(400));
+
+        try {
+            booksService.create(mapper.readValue(body, BookDao.class));
+            fail();
+        } catch (ResponseStatusException e) {
+            assertEquals(400, e.getStatusCode().value());
+            assertEquals("isbn is required", e.getReason());
+        }
+    }
+
     @Test
     public void updateBook() throws Exception {
         String body = "{"
@@ -264,6 +301,413 @@ public class BooksControllerTest {
         assertArrayEquals(expectedIsbn, actualIsbn);
     }
 
+    @Test
+    public void getBooksPage() throws Exception {
+        String[] isbns = new String[] {"5589197551343", "5589197551341", "5589197551342"};
+
+        for (String isbn : isbns) {
+            String body = "{"
+                + "\"isbn\": \"" + isbn + "\","
+                + "\"name\": \"book-" + isbn + "\","
+                + "\"author_name\": \"author-1\","
+                + "\"publication_year\": 2018,"
+                + "\"selling_price\": 250.00"
+                + "}";
+
+            mockMvc.perform(
+                post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)
+            )
+            .andExpect(status().is(201));
+        }
+
+        MvcResult result = mockMvc.perform(
+            get("/books?limit=2")
+        )
+        .andExpect(status().is(200))
+        .andReturn();
+
+        JsonNode[] books = mapper.readValue(result.getResponse().getContentAsString(), JsonNode[].class);
+
+        assertEquals(books.length, 2);
+        assertEquals(books[0].get("isbn").asText(), "5589197551341");
+        assertEquals(books[1].get("isbn").asText(), "5589197551342");
+
+        String cursor = result.getResponse().getHeader("X-Next-Cursor");
+
+        assertNotNull(cursor);
+
+        result = mockMvc.perform(
+            get("/books?limit=2&after=" + cursor)
+        )
+        .andExpect(status().is(200))
+        .andReturn();
+
+        books = mapper.readValue(result.getResponse().getContentAsString(), JsonNode[].class);
+
+        assertEquals(books.length, 1);
+        assertEquals(books[0].get("isbn").asText(), "5589197551343");
+        assertNull(result.getResponse().getHeader("X-Next-Cursor"));
+
+        mockMvc.perform(
+            get("/books?limit=0")
+        )
+        .andExpect(status().is(400));
+    }
+
+    @Test
+    public void getBookByIsbnFromCache() throws Exception {
+        String body = "{"
+            + "\"isbn\": \"5589197551341\","
+            + "\"name\": \"book-1\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 250.00"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        mockMvc.perform(
+            get("/books/5589197551341")
+        )
+        .andExpect(status().is(200));
+
+        String data = mockMvc.perform(
+            get("/cache/stats")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        JsonNode region = Stream.of(mapper.readValue(data, JsonNode[].class))
+            .filter(stats -> stats.get("region").asText().endsWith("Book"))
+            .findFirst()
+            .orElse(null);
+
+        assertNotNull(region);
+        assertEquals(region.get("hit_count").asLong(), 1);
+    }
+
+    @Test
+    public void getBookByIsbnWithETag() throws Exception {
+        String body = "{"
+            + "\"isbn\": \"5589197551341\","
+            + "\"name\": \"book-1\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 250.00"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        String etag = mockMvc.perform(
+            get("/books/5589197551341")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getHeader("ETag");
+
+        assertNotNull(etag);
+
+        mockMvc.perform(
+            get("/books/5589197551341")
+            .header("If-None-Match", etag)
+        )
+        .andExpect(status().is(304));
+
+        mockMvc.perform(
+            put("/books/5589197551341")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"selling_price\": 350.00}")
+        )
+        .andExpect(status().is(200));
+
+        String data = mockMvc.perform(
+            get("/books/5589197551341")
+            .header("If-None-Match", etag)
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals(mapper.readTree(data).get("selling_price").asDouble(), 350.00, 1e-6);
+    }
+
+    @Test
+    public void getRecreatedBookByIsbnWithETag() throws Exception {
+        String body = "{"
+            + "\"isbn\": \"5589197551341\","
+            + "\"name\": \"book-1\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 250.00"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        String etag = mockMvc.perform(
+            get("/books/5589197551341")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getHeader("ETag");
+
+        mockMvc.perform(
+            delete("/books/5589197551341")
+        )
+        .andExpect(status().is(200));
+
+        // the re-created book starts over at version 0 and must still not match the old ETag
+        Thread.sleep(5);
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body.replace("book-1", "book-2"))
+        )
+        .andExpect(status().is(201));
+
+        String data = mockMvc.perform(
+            get("/books/5589197551341")
+            .header("If-None-Match", etag)
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals("book-2", mapper.readTree(data).get("name").asText());
+    }
+
+    @Test
+    public void getMetrics() throws Exception {
+        String body = "{"
+            + "\"isbn\": \"5589197551341\","
+            + "\"name\": \"book-1\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 250.00"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+
+        mockMvc.perform(
+            get("/books")
+        )
+        .andExpect(status().is(200));
+
+        String data = mockMvc.perform(
+            get("/actuator/prometheus")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertTrue(data.contains("repository_invocations_seconds_count{exception=\"none\",method=\"findAll\","
+            + "repository=\"BooksRepository\",state=\"success\"} 1"));
+        assertTrue(data.contains("hibernate_statements_total"));
+        assertTrue(data.contains("hikaricp_connections_active"));
+    }
+
+    @Test
+    public void searchBooks() throws Exception {
+        String[][] books = {
+            {"5589197551341", "java-1", "author-1", "2010", "15.00"},
+            {"5589197551342", "java-2", "author-1", "2015", "25.00"},
+            {"5589197551343", "kotlin-1", "author-1", "2018", "10.00"},
+            {"5589197551344", "java_3", "author-2", "2018", "12.00"}
+        };
+
+        for (String[] book : books) {
+            String body = "{"
+                + "\"isbn\": \"" + book[0] + "\","
+                + "\"name\": \"" + book[1] + "\","
+                + "\"author_name\": \"" + book[2] + "\","
+                + "\"publication_year\": " + book[3] + ","
+                + "\"selling_price\": " + book[4]
+                + "}";
+
+            mockMvc.perform(
+                post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)
+            )
+            .andExpect(status().is(201));
+        }
+
+        String data = mockMvc.perform(
+            get("/books/search?author_name=author-1&max_selling_price=20")
+        )
+        .andExpect(status().is(200))
+        .andExpect(header().string("X-Total-Count", "2"))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        JsonNode[] found = mapper.readValue(data, JsonNode[].class);
+
+        assertEquals(found.length, 2);
+        assertEquals(found[0].get("isbn").asText(), "5589197551341");
+        assertEquals(found[1].get("isbn").asText(), "5589197551343");
+
+        data = mockMvc.perform(
+            get("/books/search?name_prefix=java_&min_publication_year=2016&max_publication_year=2020")
+        )
+        .andExpect(status().is(200))
+        .andExpect(header().string("X-Total-Count", "1"))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        found = mapper.readValue(data, JsonNode[].class);
+
+        assertEquals(found.length, 1);
+        assertEquals(found[0].get("isbn").asText(), "5589197551344");
+
+        data = mockMvc.perform(
+            get("/books/search?name_prefix=java&page=1&size=2")
+        )
+        .andExpect(status().is(200))
+        .andExpect(header().string("X-Total-Count", "3"))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        found = mapper.readValue(data, JsonNode[].class);
+
+        assertEquals(found.length, 1);
+        assertEquals(found[0].get("isbn").asText(), "5589197551344");
+
+        mockMvc.perform(
+            get("/books/search?size=0")
+        )
+        .andExpect(status().is(400));
+    }
+
+    @Test
+    public void autocompleteBooks() throws Exception {
+        String[][] books = {
+            {"5589197551341", "The Pragmatic Programmer", "Andrew Hunt"},
+            {"5589197551342", "Programming Pearls", "Jon Bentley"},
+            {"5589197551343", "Clean Code", "Robert Martin"}
+        };
+
+        for (String[] book : books) {
+            String body = "{"
+                + "\"isbn\": \"" + book[0] + "\","
+                + "\"name\": \"" + book[1] + "\","
+                + "\"author_name\": \"" + book[2] + "\","
+                + "\"publication_year\": 2018,"
+                + "\"selling_price\": 250.00"
+                + "}";
+
+            mockMvc.perform(
+                post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)
+            )
+            .andExpect(status().is(201));
+        }
+
+        // the index is near-real-time, give it a moment to pick the writes up
+        JsonNode[] found = new JsonNode[0];
+
+        for (int attempt = 0; attempt < 100 && found.length < 2; attempt++) {
+            Thread.sleep(50);
+
+            String data = mockMvc.perform(
+                get("/books/autocomplete?q=prog")
+            )
+            .andExpect(status().is(200))
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+            found = mapper.readValue(data, JsonNode[].class);
+        }
+
+        assertEquals(found.length, 2);
+
+        String data = mockMvc.perform(
+            get("/books/autocomplete?q=pragmatc prog")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        found = mapper.readValue(data, JsonNode[].class);
+
+        assertEquals(found.length, 1);
+        assertEquals(found[0].get("isbn").asText(), "5589197551341");
+
+        data = mockMvc.perform(
+            get("/books/autocomplete?q=bentl")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        found = mapper.readValue(data, JsonNode[].class);
+
+        assertEquals(found.length, 1);
+        assertEquals(found[0].get("name").asText(), "Programming Pearls");
+        assertEquals(found[0].get("author_name").asText(), "Jon Bentley");
+
+        mockMvc.perform(
+            delete("/books/5589197551342")
+        )
+        .andExpect(status().is(200));
+
+        for (int attempt = 0; attempt < 100 && found.length > 0; attempt++) {
+            Thread.sleep(50);
+
+            data = mockMvc.perform(
+                get("/books/autocomplete?q=bentl")
+            )
+            .andExpect(status().is(200))
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+            found = mapper.readValue(data, JsonNode[].class);
+        }
+
+        assertEquals(found.length, 0);
+
+        mockMvc.perform(
+            get("/books/autocomplete?q=prog&limit=51")
+        )
+        .andExpect(status().is(400));
+    }
+
     @Test
     public void deleteBook() throws Exception {
         String body = "{"
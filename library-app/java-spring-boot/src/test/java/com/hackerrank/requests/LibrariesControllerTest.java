@@ -181,4 +181,51 @@ public class LibrariesControllerTest {
         )
         .andExpect(status().is(404));
     }
+
+    @Test
+    public void deleteLibraryAsync() throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        mockMvc.perform(
+            delete("/libraries/2?async=true")
+        )
+        .andExpect(status().is(400));
+
+        String data = mockMvc.perform(
+            delete("/libraries/1?async=true")
+        )
+        .andExpect(status().is(202))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        String jobId = mapper.readTree(data).get("id").asText();
+        String jobStatus = "pending";
+
+        for (int attempt = 0; attempt < 100 && !jobStatus.equals("succeeded"); attempt++) {
+            Thread.sleep(50);
+
+            data = mockMvc.perform(
+                get("/jobs/" + jobId)
+            )
+            .andExpect(status().is(200))
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+            jobStatus = mapper.readTree(data).get("status").asText();
+        }
+
+        assertEquals(jobStatus, "succeeded");
+
+        mockMvc.perform(
+            get("/libraries/1")
+        )
+        .andExpect(status().is(404));
+    }
 }
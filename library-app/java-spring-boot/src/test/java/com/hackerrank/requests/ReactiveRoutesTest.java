@@ -0,0 +1,308 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.requests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hackerrank.Application;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * The books and libraries contract served by the WebFlux routes of the
+ * reactive profile.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest(classes = Application.class, properties = "spring.main.web-application-type=reactive")
+@ActiveProfiles("reactive")
+public class ReactiveRoutesTest {
+    @ClassRule
+    public static final SpringClassRule springClassRule = new SpringClassRule();
+
+    @Rule
+    public final SpringMethodRule springMethodRule = new SpringMethodRule();
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private WebTestClient client;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Before
+    public void setup() {
+        client = WebTestClient.bindToApplicationContext(applicationContext).build();
+    }
+
+    @Test
+    public void createLibraryCreateMoveAndDeleteBook() throws Exception {
+        for (int i = 1; i <= 2; i++) {
+            client.post().uri("/libraries")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"name\": \"library-" + i + "\"}")
+                .exchange()
+                .expectStatus().isEqualTo(201);
+        }
+
+        String body = "{"
+            + "\"isbn\": \"5589197551341\","
+            + "\"name\": \"book-1\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 250.00,"
+            + "\"library_id\": 1"
+            + "}";
+
+        JsonNode book = json(client.post().uri("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(body)
+            .exchange()
+            .expectStatus().isEqualTo(201)
+            .expectBody(String.class)
+            .returnResult()
+            .getResponseBody());
+
+        assertEquals(book.get("isbn").asText(), "5589197551341");
+        assertEquals(book.get("library_id").asLong(), 1);
+
+        client.post().uri("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(body)
+            .exchange()
+            .expectStatus().isEqualTo(400);
+
+        String etag = client.get().uri("/books/5589197551341")
+            .exchange()
+            .expectStatus().isEqualTo(200)
+            .returnResult(String.class)
+            .getResponseHeaders()
+            .getETag();
+
+        client.get().uri("/books/5589197551341")
+            .header("If-None-Match", etag)
+            .exchange()
+            .expectStatus().isEqualTo(304);
+
+        client.put().uri("/books/5589197551341")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(body.replace("\"library_id\": 1", "\"library_id\": 2"))
+            .exchange()
+            .expectStatus().isEqualTo(200);
+
+        book = json(client.get().uri("/books/5589197551341")
+            .exchange()
+            .expectStatus().isEqualTo(200)
+            .expectBody(String.class)
+            .returnResult()
+            .getResponseBody());
+
+        assertEquals(book.get("library_id").asLong(), 2);
+
+        JsonNode libraries = json(client.get().uri("/libraries")
+            .exchange()
+            .expectStatus().isEqualTo(200)
+            .expectBody(String.class)
+            .returnResult()
+            .getResponseBody());
+
+        assertEquals(libraries.size(), 2);
+        assertEquals(libraries.get(0).get("book_count").asLong(), 0);
+        assertEquals(libraries.get(1).get("book_count").asLong(), 1);
+
+        JsonNode library = json(client.get().uri("/libraries/2")
+            .exchange()
+            .expectStatus().isEqualTo(200)
+            .expectBody(String.class)
+            .returnResult()
+            .getResponseBody());
+
+        assertEquals(library.get("name").asText(), "library-2");
+        assertEquals(library.get("books").size(), 1);
+
+        client.get().uri("/libraries/3")
+            .exchange()
+            .expectStatus().isEqualTo(404);
+
+        client.delete().uri("/libraries/2")
+            .exchange()
+            .expectStatus().isEqualTo(200);
+
+        book = json(client.get().uri("/books")
+            .exchange()
+            .expectStatus().isEqualTo(200)
+            .expectBody(String.class)
+            .returnResult()
+            .getResponseBody());
+
+        assertEquals(book.size(), 1);
+        assertEquals(book.get(0).get("library_id").isNull(), true);
+
+        client.delete().uri("/books/5589197551341")
+            .exchange()
+            .expectStatus().isEqualTo(200);
+
+        client.get().uri("/books/5589197551341")
+            .exchange()
+            .expectStatus().isEqualTo(404);
+    }
+
+    @Test
+    public void pageBooksByCursor() throws Exception {
+        for (String isbn : new String[] {"0131103628", "0201633612", "0262033844"}) {
+            client.post().uri("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(book(isbn))
+                .exchange()
+                .expectStatus().isEqualTo(201);
+        }
+
+        EntityExchangeResult<String> first = client.get().uri("/books?limit=2")
+            .exchange()
+            .expectStatus().isEqualTo(200)
+            .expectBody(String.class)
+            .returnResult();
+
+        JsonNode page = json(first.getResponseBody());
+        String cursor = first.getResponseHeaders().getFirst("X-Next-Cursor");
+
+        assertEquals(page.size(), 2);
+        assertEquals(page.get(0).get("isbn").asText(), "0131103628");
+        assertEquals(page.get(1).get("isbn").asText(), "0201633612");
+        assertNotNull(cursor);
+
+        EntityExchangeResult<String> last = client.get().uri("/books?limit=2&after=" + cursor)
+            .exchange()
+            .expectStatus().isEqualTo(200)
+            .expectBody(String.class)
+            .returnResult();
+
+        page = json(last.getResponseBody());
+
+        assertEquals(page.size(), 1);
+        assertEquals(page.get(0).get("isbn").asText(), "0262033844");
+        assertNull(last.getResponseHeaders().getFirst("X-Next-Cursor"));
+
+        client.get().uri("/books?limit=0")
+            .exchange()
+            .expectStatus().isEqualTo(400);
+
+        client.get().uri("/books?after=*")
+            .exchange()
+            .expectStatus().isEqualTo(400);
+    }
+
+    @Test
+    public void revalidateBooksAndLibraries() throws Exception {
+        client.post().uri("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"name\": \"library-1\"}")
+            .exchange()
+            .expectStatus().isEqualTo(201);
+
+        client.post().uri("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(book("5589197551341").replace("}", ", \"library_id\": 1}"))
+            .exchange()
+            .expectStatus().isEqualTo(201);
+
+        HttpHeaders headers = client.get().uri("/books/5589197551341")
+            .exchange()
+            .expectStatus().isEqualTo(200)
+            .returnResult(String.class)
+            .getResponseHeaders();
+        String etag = headers.getETag();
+
+        assertNotNull(etag);
+        assertNotNull(headers.getFirst(HttpHeaders.LAST_MODIFIED));
+
+        // a list of tags and a weak tag match as they do on the servlet stack
+        for (String ifNoneMatch : new String[] {"\"other\", " + etag, "W/" + etag}) {
+            client.get().uri("/books/5589197551341")
+                .header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch)
+                .exchange()
+                .expectStatus().isEqualTo(304);
+        }
+
+        client.get().uri("/books/5589197551341")
+            .header(HttpHeaders.IF_NONE_MATCH, "\"other\"")
+            .exchange()
+            .expectStatus().isEqualTo(200);
+
+        headers = client.get().uri("/libraries/1")
+            .exchange()
+            .expectStatus().isEqualTo(200)
+            .returnResult(String.class)
+            .getResponseHeaders();
+        etag = headers.getETag();
+
+        assertNotNull(etag);
+        assertNotNull(headers.getFirst(HttpHeaders.LAST_MODIFIED));
+
+        client.get().uri("/libraries/1")
+            .header(HttpHeaders.IF_NONE_MATCH, etag)
+            .exchange()
+            .expectStatus().isEqualTo(304);
+
+        client.get().uri("/libraries/1")
+            .header(HttpHeaders.IF_MODIFIED_SINCE, headers.getFirst(HttpHeaders.LAST_MODIFIED))
+            .exchange()
+            .expectStatus().isEqualTo(304);
+
+        client.put().uri("/books/5589197551341")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"selling_price\": 350.00}")
+            .exchange()
+            .expectStatus().isEqualTo(200);
+
+        client.get().uri("/libraries/1")
+            .header(HttpHeaders.IF_NONE_MATCH, etag)
+            .exchange()
+            .expectStatus().isEqualTo(200);
+    }
+
+    private static String book(String isbn) {
+        return "{"
+            + "\"isbn\": \"" + isbn + "\","
+            + "\"name\": \"book-" + isbn + "\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2018,"
+            + "\"selling_price\": 250.00"
+            + "}";
+    }
+
+    private JsonNode json(String data) throws Exception {
+        return mapper.readTree(data);
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.requests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hackerrank.Application;
+import com.hackerrank.datasource.ReplicaLagMonitor;
+import com.hackerrank.datasource.ReplicaRoutingDataSource;
+import com.hackerrank.models.Book;
+import com.hackerrank.services.BookResponseCache;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Read-only endpoints served by two embedded H2 replicas, brought up to
+ * date by copying the primary with H2's SCRIPT command. Lag checks are run
+ * by the test rather than on a schedule.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest(
+    classes = Application.class,
+    properties = {
+        "library.replicas.urls=jdbc:h2:mem:replica-1,jdbc:h2:mem:replica-2",
+        "library.replicas.max-lag-ms=1000",
+        "library.replicas.lag-check-interval-ms=3600000"
+    }
+)
+@WebAppConfiguration
+public class ReplicaRoutingTest {
+    @ClassRule
+    public static final SpringClassRule springClassRule = new SpringClassRule();
+
+    @Rule
+    public final SpringMethodRule springMethodRule = new SpringMethodRule();
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private HikariDataSource primaryDataSource;
+
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Autowired
+    private ReplicaLagMonitor replicaLagMonitor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private BookResponseCache responseCache;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private static MockMvc mockMvc;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Before
+    public void setup() {
+        mockMvc = webAppContextSetup(webApplicationContext).build();
+    }
+
+    @Test
+    public void routeReadsToReplicasWithinLagBound() throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        createBook("5589197551341");
+        createBook("9781402894626");
+
+        // the replicas hold nothing yet, so they are unreachable and reads stay on the primary
+        replicaLagMonitor.check();
+
+        assertEquals(2, countBooks());
+        assertEquals(0, routed("replica-1"), 0);
+        assertEquals(0, routed("replica-2"), 0);
+
+        replicate("replica-1");
+        replicaLagMonitor.check();
+
+        assertEquals(2, countBooks());
+        assertEquals(2, countBooks());
+        assertEquals(2, routed("replica-1"), 0);
+        assertEquals(0, routed("replica-2"), 0);
+
+        replicate("replica-2");
+        replicaLagMonitor.check();
+        createBook("9780262033848");
+
+        // writes went to the primary, the replicas still serve the copy they were given
+        assertEquals(2, countBooks());
+        assertEquals(2, countBooks());
+        assertEquals(3, routed("replica-1"), 0);
+        assertEquals(1, routed("replica-2"), 0);
+
+        Thread.sleep(1100);
+        replicaLagMonitor.check();
+
+        // both replicas are now further behind than allowed, reads fall back to the primary
+        assertEquals(3, countBooks());
+        assertEquals(3, routed("replica-1"), 0);
+        assertEquals(1, routed("replica-2"), 0);
+        assertEquals(true, replicaRoutingDataSource.getAvailableReplicas().isEmpty());
+    }
+
+    @Test
+    public void keepLaggingReplicaReadsOutOfTheCaches() throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        createBook("5589197551341");
+
+        replicate("replica-1");
+        replicate("replica-2");
+        replicaLagMonitor.check();
+
+        // the replicas are within the lag bound but still hold the old price
+        String body = "{"
+            + "\"name\": \"book-5589197551341\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2001,"
+            + "\"selling_price\": 20.0,"
+            + "\"library_id\": 1"
+            + "}";
+
+        mockMvc.perform(
+            put("/books/5589197551341")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(200));
+
+        entityManagerFactory.getCache().evictAll();
+
+        assertEquals(20.0, showBook("5589197551341").get("selling_price").asDouble(), 0);
+
+        // the cached body was loaded from the primary, not pinned from a replica
+        JsonNode cached = mapper.readTree(responseCache.getIfPresent("5589197551341").getBody());
+
+        assertEquals(20.0, cached.get("selling_price").asDouble(), 0);
+        assertEquals(20.0, showBook("5589197551341").get("selling_price").asDouble(), 0);
+
+        // books read from a replica are not put into the second-level cache
+        entityManagerFactory.getCache().evictAll();
+
+        assertEquals(1, countBooks());
+        assertEquals(1, routed("replica-1") + routed("replica-2"), 0);
+        assertFalse(entityManagerFactory.getCache().contains(Book.class, "5589197551341"));
+    }
+
+    private JsonNode showBook(String isbn) throws Exception {
+        String data = mockMvc.perform(
+            get("/books/" + isbn)
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        return mapper.readTree(data);
+    }
+
+    private void createBook(String isbn) throws Exception {
+        String body = "{"
+            + "\"isbn\": \"" + isbn + "\","
+            + "\"name\": \"book-" + isbn + "\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2001,"
+            + "\"selling_price\": 10.0,"
+            + "\"library_id\": 1"
+            + "}";
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body)
+        )
+        .andExpect(status().is(201));
+    }
+
+    private int countBooks() throws Exception {
+        String data = mockMvc.perform(
+            get("/books")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        return mapper.readValue(data, JsonNode[].class).length;
+    }
+
+    private double routed(String target) {
+        return meterRegistry.get(ReplicaRoutingDataSource.METRIC_NAME).tag("target", target).counter().count();
+    }
+
+    /**
+     * Replaces everything on the replica with a copy of the primary.
+     */
+    private void replicate(String replica) throws Exception {
+        DataSource target = replicaRoutingDataSource.getReplicas().get(replica);
+
+        try (
+            Connection from = primaryDataSource.getConnection();
+            Connection to = target.getConnection();
+            Statement script = from.createStatement();
+            Statement apply = to.createStatement();
+            ResultSet statements = script.executeQuery("SCRIPT")
+        ) {
+            // the pool hands out read-only connections, the copy needs a writable one
+            to.setReadOnly(false);
+            apply.execute("DROP ALL OBJECTS");
+
+            while (statements.next()) {
+                apply.execute(statements.getString(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,567 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.requests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hackerrank.Application;
+import com.hackerrank.dao.BookDao;
+import com.hackerrank.datasource.ShardRoutingDataSource;
+import com.hackerrank.metrics.StatementCounter;
+import com.hackerrank.services.BookShards;
+import com.hackerrank.services.BookWrite;
+import com.hackerrank.services.BookWriteQueue;
+import com.hackerrank.services.LibrariesService;
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import javax.sql.DataSource;
+import org.h2.api.Trigger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Books spread over three embedded H2 shards. Where rows ended up is
+ * checked with plain JDBC against each shard's pool.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest(
+    classes = Application.class,
+    properties = {
+        "library.shards.urls=jdbc:h2:mem:shard-1,jdbc:h2:mem:shard-2,jdbc:h2:mem:shard-3",
+        "library.write-behind.linger-ms=200"
+    }
+)
+@WebAppConfiguration
+public class ShardingTest {
+    private static final List<String> ISBNS = Arrays.asList(
+        "0131103628", "0201633612", "0262033844", "0321125215", "0596007124",
+        "1449331815", "1617294942", "5589197551341", "9780262033848", "9781402894626"
+    );
+
+    @ClassRule
+    public static final SpringClassRule springClassRule = new SpringClassRule();
+
+    @Rule
+    public final SpringMethodRule springMethodRule = new SpringMethodRule();
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private HikariDataSource primaryDataSource;
+
+    @Autowired
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    @Autowired
+    private BookShards bookShards;
+
+    @Autowired
+    private LibrariesService librariesService;
+
+    @Autowired
+    private BookWriteQueue writeQueue;
+
+    private static MockMvc mockMvc;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Before
+    public void setup() {
+        mockMvc = webAppContextSetup(webApplicationContext).build();
+    }
+
+    @Test
+    public void storeEachBookOnItsShardOnly() throws Exception {
+        createLibrary("library-1");
+
+        for (int i = 0; i < ISBNS.size(); i++) {
+            createBook(ISBNS.get(i), 1, 2000 + i % 3, 10.0 + i);
+        }
+
+        for (String isbn : ISBNS) {
+            for (String shard : bookShards.getShards()) {
+                assertEquals(shard.equals(bookShards.shardOf(isbn)) ? 1 : 0, count(
+                    shardRoutingDataSource.getShards().get(shard),
+                    "select count(*) from book where isbn = '" + isbn + "'"
+                ));
+            }
+        }
+
+        // the hash does spread these ISBNs, otherwise the scatter-gather below proves little
+        for (String shard : bookShards.getShards()) {
+            assertEquals(true, count(shardRoutingDataSource.getShards().get(shard), "select count(*) from book") > 0);
+        }
+
+        assertEquals(0, count(primaryDataSource, "select count(*) from book"));
+
+        assertEquals(ISBNS.size(), read(get("/books")).size());
+        assertEquals("5589197551341", read(get("/books/5589197551341")).get("isbn").asText());
+
+        mockMvc.perform(get("/books/0000000000")).andExpect(status().is(404));
+
+        // duplicates are found on the ISBN's own shard
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(book("0131103628", 1, 2001, 1.0))
+        )
+        .andExpect(status().is(400));
+
+        // batches are split by shard, each part written in its own shard's transaction
+        String created = mockMvc.perform(
+            post("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[" + book("0000000001", 1, 2001, 1.0) + "," + book("0000000002", 1, 2001, 1.0) + ","
+                + book("9781402894626", 1, 2001, 1.0) + "]")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals(2, mapper.readTree(created).get("count").asInt());
+        assertEquals(12, read(get("/libraries/1")).get("book_count").asInt());
+
+        String deleted = mockMvc.perform(
+            delete("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[\"0000000001\", \"0000000002\", \"0131103628\", \"0000000003\"]")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals(3, mapper.readTree(deleted).get("count").asInt());
+        assertEquals(9, read(get("/books")).size());
+        assertEquals(9, read(get("/libraries/1")).get("book_count").asInt());
+    }
+
+    @Test
+    public void mergePagesAcrossShards() throws Exception {
+        createLibrary("library-1");
+
+        for (int i = 0; i < ISBNS.size(); i++) {
+            createBook(ISBNS.get(i), 1, 2000 + i % 3, 10.0 + i);
+        }
+
+        // cursor pagination walks every book in ISBN order
+        List<String> walked = new ArrayList<>();
+        String cursor = null;
+
+        do {
+            MockHttpServletResponse response = mockMvc.perform(
+                cursor == null ? get("/books").param("limit", "3") : get("/books").param("limit", "3").param("after", cursor)
+            )
+            .andExpect(status().is(200))
+            .andReturn()
+            .getResponse();
+
+            for (JsonNode book : mapper.readTree(response.getContentAsString())) {
+                walked.add(book.get("isbn").asText());
+            }
+
+            cursor = response.getHeader("X-Next-Cursor");
+        } while (cursor != null);
+
+        assertEquals(ISBNS, walked);
+
+        // offset pages are cut from the union of every shard's rows
+        MockHttpServletResponse search = mockMvc.perform(
+            get("/books/search").param("author_name", "author-1").param("page", "1").param("size", "4")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse();
+
+        assertEquals("10", search.getHeader("X-Total-Count"));
+        assertEquals(ISBNS.subList(4, 8), isbns(mapper.readTree(search.getContentAsString())));
+
+        MockHttpServletResponse books = mockMvc.perform(
+            get("/libraries/1/books").param("sort", "selling_price,desc").param("page", "0").param("size", "3")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse();
+
+        assertEquals("10", books.getHeader("X-Total-Count"));
+        assertEquals(
+            Arrays.asList("9781402894626", "9780262033848", "5589197551341"),
+            isbns(mapper.readTree(books.getContentAsString()))
+        );
+
+        JsonNode stats = read(get("/books/stats"));
+
+        assertEquals(10, stats.get("count").asInt());
+        assertEquals(3, stats.get("publication_years").size());
+        assertEquals(2000, stats.get("publication_years").get(0).get("publication_year").asInt());
+        assertEquals(4, stats.get("publication_years").get(0).get("count").asInt());
+        assertEquals(10.0, stats.get("publication_years").get(0).get("min_selling_price").asDouble(), 0);
+    }
+
+    @Test
+    public void exportLibrariesWithTheBooksOfEveryShard() throws Exception {
+        createLibrary("library-1");
+        createLibrary("library-2");
+        createLibrary("library-3");
+
+        List<String> first = new ArrayList<>();
+        List<String> third = new ArrayList<>();
+
+        for (int i = 0; i < ISBNS.size(); i++) {
+            // library 2 holds nothing, so every shard's cursor has to skip past it
+            long libraryId = i % 2 == 0 ? 1 : 3;
+            createBook(ISBNS.get(i), libraryId, 2001, 1.0);
+            (libraryId == 1 ? first : third).add(ISBNS.get(i));
+        }
+
+        JsonNode libraries = read(get("/libraries/export"));
+
+        assertEquals(3, libraries.size());
+        assertEquals(new HashSet<>(first), new HashSet<>(isbns(libraries.get(0).get("books"))));
+        assertEquals(0, libraries.get(1).get("books").size());
+        assertEquals(new HashSet<>(third), new HashSet<>(isbns(libraries.get(2).get("books"))));
+        assertEquals(first.size(), libraries.get(0).get("books").size());
+        assertEquals(third.size(), libraries.get(2).get("books").size());
+    }
+
+    @Test
+    public void countTheStatementsOfEveryShard() throws Exception {
+        createLibrary("library-1");
+
+        for (int i = 0; i < ISBNS.size(); i++) {
+            createBook(ISBNS.get(i), 1, 2001, 1.0);
+        }
+
+        StatementCounter.begin();
+        StatementCounter.Log log;
+
+        try {
+            read(get("/books"));
+        } finally {
+            log = StatementCounter.end();
+        }
+
+        // one scatter-gather query per shard, each run on the shard's own thread
+        assertEquals(bookShards.getShards().size(), log.getCount());
+
+        StatementCounter.begin();
+
+        try {
+            read(get("/libraries/1"));
+        } finally {
+            log = StatementCounter.end();
+        }
+
+        // the library on the primary and its books on every shard
+        assertEquals(1 + bookShards.getShards().size(), log.getCount());
+    }
+
+    @Test
+    public void keepLibrariesOnThePrimaryInStep() throws Exception {
+        createLibrary("library-1");
+        createLibrary("library-2");
+
+        for (int i = 0; i < ISBNS.size(); i++) {
+            createBook(ISBNS.get(i), 1, 2001, 1.0);
+        }
+
+        JsonNode library = read(get("/libraries/1"));
+
+        assertEquals(10, library.get("book_count").asInt());
+        assertEquals(10, library.get("books").size());
+
+        String etag = mockMvc.perform(get("/libraries/1"))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+
+        mockMvc.perform(get("/libraries/1").header("If-None-Match", etag)).andExpect(status().is(304));
+
+        // moving books between libraries changes the shard rows and the primary's counters
+        mockMvc.perform(
+            put("/books/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[{\"isbn\": \"0131103628\", \"library_id\": 2}, {\"isbn\": \"9781402894626\", \"library_id\": 2}]")
+        )
+        .andExpect(status().is(200));
+
+        mockMvc.perform(get("/libraries/1").header("If-None-Match", etag)).andExpect(status().is(200));
+
+        assertEquals(8, read(get("/libraries/1")).get("book_count").asInt());
+        assertEquals(2, read(get("/libraries/2")).get("books").size());
+
+        mockMvc.perform(delete("/books/0201633612")).andExpect(status().is(200));
+        mockMvc.perform(delete("/books/0201633612")).andExpect(status().is(400));
+
+        assertEquals(7, read(get("/libraries/1")).get("book_count").asInt());
+
+        mockMvc.perform(delete("/libraries/1")).andExpect(status().is(200));
+
+        // the library's books stay on their shards, unlinked
+        assertEquals(9, read(get("/books")).size());
+
+        int unlinked = 0;
+
+        for (DataSource shard : shardRoutingDataSource.getShards().values()) {
+            unlinked += count(shard, "select count(*) from book where library_id is null");
+        }
+
+        assertEquals(7, unlinked);
+
+        librariesService.reconcileCounters();
+
+        assertEquals(2, read(get("/libraries/2")).get("book_count").asInt());
+    }
+
+    @Test
+    public void completeTheCommittedShardsOfAGroup() throws Exception {
+        createLibrary("library-1");
+
+        // one shard loses its table, so its part of the group rolls back while the others commit
+        String broken = bookShards.shardOf(ISBNS.get(0));
+        execute(shardRoutingDataSource.getShards().get(broken), "alter table book rename to book_offline");
+
+        List<CompletableFuture<BookDao>> completions = new ArrayList<>();
+
+        for (String isbn : ISBNS) {
+            BookDao book = mapper.readValue(book(isbn, 1, 2001, 1.0), BookDao.class);
+            completions.add(writeQueue.submit(BookWrite.create(book)));
+        }
+
+        int committed = 0;
+
+        for (int i = 0; i < ISBNS.size(); i++) {
+            if (bookShards.shardOf(ISBNS.get(i)).equals(broken)) {
+                try {
+                    completions.get(i).join();
+                    fail();
+                } catch (CompletionException e) {
+                    // the shard's own failure, not a rejection met on retry
+                    assertFalse(e.getCause() instanceof ResponseStatusException);
+                }
+            } else {
+                assertEquals(ISBNS.get(i), completions.get(i).join().getIsbn());
+                committed++;
+            }
+        }
+
+        assertTrue(committed > 0 && committed < ISBNS.size());
+
+        // the primary recorded exactly the books that were committed
+        assertEquals(committed, count(primaryDataSource, "select book_count from library where id = 1"));
+        assertEquals(committed, count(
+            primaryDataSource,
+            "select count(*) from change_log where entity = 'book' and operation = 'created'"
+        ));
+    }
+
+    @Test
+    public void reportTheFailedShardOfABatch() throws Exception {
+        createLibrary("library-1");
+        createLibrary("library-2");
+
+        for (String isbn : ISBNS) {
+            createBook(isbn, 1, 2001, 1.0);
+        }
+
+        // one shard still reads but rejects every write, the others commit their part of each batch
+        String broken = bookShards.shardOf(ISBNS.get(0));
+        execute(
+            shardRoutingDataSource.getShards().get(broken),
+            "create trigger reject_writes before insert, update, delete on book call '"
+                + RejectWrites.class.getName() + "'"
+        );
+
+        List<String> offline = ISBNS.stream().filter(isbn -> bookShards.shardOf(isbn).equals(broken)).collect(toList());
+        int online = ISBNS.size() - offline.size();
+
+        String moves = ISBNS.stream()
+            .map(isbn -> "{\"isbn\": \"" + isbn + "\", \"library_id\": 2}")
+            .collect(joining(","));
+        JsonNode updated = write(put("/books/batch"), "[" + moves + "]");
+
+        assertEquals(online, updated.get("count").asInt());
+        assertEquals(offline, isbnsWithStatus(updated, 500));
+        assertEquals(offline.size(), count(primaryDataSource, "select book_count from library where id = 1"));
+        assertEquals(online, count(primaryDataSource, "select book_count from library where id = 2"));
+
+        // 0000000003 and 0000000004 hash to the same shard as the first of ISBNS, the others do not
+        JsonNode created = write(post("/books/batch"), "[" + book("0000000001", 2, 2001, 1.0) + ","
+            + book("0000000002", 2, 2001, 1.0) + "," + book("0000000003", 2, 2001, 1.0) + ","
+            + book("0000000004", 2, 2001, 1.0) + "]");
+
+        assertEquals(2, created.get("count").asInt());
+        assertEquals(Arrays.asList("0000000001", "0000000002"), isbnsWithStatus(created, 201));
+        assertEquals(Arrays.asList("0000000003", "0000000004"), isbnsWithStatus(created, 500));
+        assertEquals(online + 2, count(primaryDataSource, "select book_count from library where id = 2"));
+
+        JsonNode deleted = write(delete("/books/batch"), mapper.writeValueAsString(ISBNS));
+
+        assertEquals(online, deleted.get("count").asInt());
+        assertEquals(offline, isbnsWithStatus(deleted, 500));
+        assertEquals(2, count(primaryDataSource, "select book_count from library where id = 2"));
+
+        // the library is kept for the books of the failed shard, the ones unlinked elsewhere are recorded
+        mockMvc.perform(delete("/libraries/2")).andExpect(status().is(500));
+
+        assertEquals(1, count(primaryDataSource, "select count(*) from library where id = 2"));
+        assertEquals(0, count(primaryDataSource, "select book_count from library where id = 2"));
+        assertEquals(2, count(
+            primaryDataSource,
+            "select count(*) from change_log where entity = 'book' and operation = 'updated' "
+                + "and entity_key in ('0000000001', '0000000002')"
+        ));
+        assertEquals(0, count(
+            shardRoutingDataSource.getShards().get(bookShards.shardOf("0000000001")),
+            "select count(*) from book where library_id is not null"
+        ));
+    }
+
+    private void createLibrary(String name) throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"" + name + "\"}")
+        )
+        .andExpect(status().is(201));
+    }
+
+    private void createBook(String isbn, long libraryId, int publicationYear, double sellingPrice) throws Exception {
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(book(isbn, libraryId, publicationYear, sellingPrice))
+        )
+        .andExpect(status().is(201));
+    }
+
+    private static String book(String isbn, long libraryId, int publicationYear, double sellingPrice) {
+        return "{"
+            + "\"isbn\": \"" + isbn + "\","
+            + "\"name\": \"book-" + isbn + "\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": " + publicationYear + ","
+            + "\"selling_price\": " + sellingPrice + ","
+            + "\"library_id\": " + libraryId
+            + "}";
+    }
+
+    private JsonNode write(MockHttpServletRequestBuilder request, String body) throws Exception {
+        return read(request.contentType(MediaType.APPLICATION_JSON).content(body));
+    }
+
+    private JsonNode read(RequestBuilder request) throws Exception {
+        String data = mockMvc.perform(request)
+            .andExpect(status().is(200))
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+        return mapper.readTree(data);
+    }
+
+    private static List<String> isbns(JsonNode books) {
+        List<String> isbns = new ArrayList<>();
+        books.forEach(book -> isbns.add(book.get("isbn").asText()));
+
+        return isbns;
+    }
+
+    private static List<String> isbnsWithStatus(JsonNode result, int status) {
+        List<String> isbns = new ArrayList<>();
+
+        for (JsonNode item : result.get("items")) {
+            if (item.get("status").asInt() == status) {
+                isbns.add(item.get("isbn").asText());
+            }
+        }
+
+        return isbns;
+    }
+
+    private static void execute(DataSource dataSource, String sql) throws Exception {
+        try (
+            Connection connection = dataSource.getConnection();
+            Statement statement = connection.createStatement()
+        ) {
+            statement.execute(sql);
+        }
+    }
+
+    private static int count(DataSource dataSource, String sql) throws Exception {
+        try (
+            Connection connection = dataSource.getConnection();
+            Statement statement = connection.createStatement();
+            ResultSet result = statement.executeQuery(sql)
+        ) {
+            result.next();
+
+            return result.getInt(1);
+        }
+    }
+
+    /**
+     * Fails every write statement on the table it is created on, as a shard
+     * that stopped taking writes would.
+     */
+    public static class RejectWrites implements Trigger {
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+            throw new SQLException("shard rejects writes");
+        }
+    }
+}
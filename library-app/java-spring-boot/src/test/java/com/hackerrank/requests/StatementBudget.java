@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.requests;
+
+import com.hackerrank.metrics.StatementCounter;
+import java.util.concurrent.Callable;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Asserts how many SQL statements a request prepares, to catch N+1 regressions.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+public final class StatementBudget {
+    private StatementBudget() {
+    }
+
+    /**
+     * Runs the action and fails if it prepared more than {@code max} statements, returning the action's result.
+     */
+    public static <T> T assertStatementsAtMost(int max, Callable<T> action) throws Exception {
+        StatementCounter.begin();
+        T result;
+        StatementCounter.Log log;
+
+        try {
+            result = action.call();
+        } finally {
+            log = StatementCounter.end();
+        }
+
+        assertTrue(
+            "expected at most " + max + " statements but got " + log.getCount() + ", repeated: " + log.getRepeated(),
+            log.getCount() <= max
+        );
+
+        return result;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2018 HackerRank.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hackerrank.requests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hackerrank.Application;
+import com.hackerrank.dao.BookDao;
+import com.hackerrank.services.BookSearchIndex;
+import com.hackerrank.services.BookWrite;
+import com.hackerrank.services.BookWriteQueue;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Book creates and updates committed in groups by the write-behind queue.
+ *
+ * @author Abhimanyu Singh
+ * @author abhimanyusingh@hackerrank.com
+ */
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest(
+    classes = Application.class,
+    properties = {
+        "library.write-behind.enabled=true",
+        "library.write-behind.linger-ms=200",
+        "spring.main.allow-bean-definition-overriding=true"
+    }
+)
+@Import(WriteBehindTest.FailingSearchIndexConfig.class)
+@WebAppConfiguration
+public class WriteBehindTest {
+    @ClassRule
+    public static final SpringClassRule springClassRule = new SpringClassRule();
+
+    @Rule
+    public final SpringMethodRule springMethodRule = new SpringMethodRule();
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private BookWriteQueue writeQueue;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private FailingSearchIndex searchIndex;
+
+    private static MockMvc mockMvc;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Before
+    public void setup() {
+        mockMvc = webAppContextSetup(webApplicationContext).build();
+    }
+
+    @Test
+    public void createAndUpdateBooksThroughQueue() throws Exception {
+        mockMvc.perform(
+            post("/libraries")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\": \"library-1\"}")
+        )
+        .andExpect(status().is(201));
+
+        String data = mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(book("5589197551341", "book-1", 10.0f, 1L))
+        )
+        .andExpect(status().is(201))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals("book-1", mapper.readTree(data).get("name").asText());
+        assertEquals(1L, mapper.readTree(data).get("library_id").asLong());
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(book("5589197551341", "book-1", 10.0f, 1L))
+        )
+        .andExpect(status().is(400));
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(book("9781402894626", "book-2", 10.0f, 2L))
+        )
+        .andExpect(status().is(400));
+
+        mockMvc.perform(
+            put("/books/9781402894626")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(book("9781402894626", "book-2", 10.0f, null))
+        )
+        .andExpect(status().is(404));
+
+        data = mockMvc.perform(
+            put("/books/5589197551341")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(book("5589197551341", "book-1-revised", 12.5f, null))
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals("book-1-revised", mapper.readTree(data).get("name").asText());
+
+        data = mockMvc.perform(
+            get("/books/5589197551341")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals("book-1-revised", mapper.readTree(data).get("name").asText());
+        assertEquals(12.5, mapper.readTree(data).get("selling_price").asDouble(), 0.001);
+
+        data = mockMvc.perform(
+            get("/libraries/1")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals(1L, mapper.readTree(data).get("book_count").asLong());
+        assertEquals(12.5, mapper.readTree(data).get("total_selling_value").asDouble(), 0.001);
+    }
+
+    @Test
+    public void coalesceWritesToOneBookIntoOneGroup() throws Exception {
+        DistributionSummary groupSizes = meterRegistry.get("library.write_behind.group.size").summary();
+        long groups = groupSizes.count();
+
+        CompletableFuture<BookDao> created = writeQueue.submit(
+            BookWrite.create(mapper.readValue(book("5589197551341", "book-1", 10.0f, null), BookDao.class))
+        );
+        CompletableFuture<BookDao> updated = writeQueue.submit(
+            BookWrite.update("5589197551341", mapper.readValue(book("5589197551341", "book-1-revised", 12.5f, null), BookDao.class))
+        );
+        CompletableFuture<BookDao> repeated = writeQueue.submit(
+            BookWrite.create(mapper.readValue(book("5589197551341", "book-1", 10.0f, null), BookDao.class))
+        );
+
+        assertEquals("book-1", created.join().getName());
+        assertEquals("book-1-revised", updated.join().getName());
+        Throwable rejection = repeated.handle((book, error) -> error).join();
+
+        assertEquals(400, ((ResponseStatusException) rejection).getStatusCode().value());
+        assertEquals(groups + 1, groupSizes.count());
+
+        MvcResult result = mockMvc.perform(
+            get("/changes?since=0")
+        )
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+        String data = mockMvc.perform(
+            asyncDispatch(result)
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        JsonNode changes = mapper.readTree(data).get("changes");
+
+        assertEquals(2, changes.size());
+        assertEquals("created", changes.get(0).get("operation").asText());
+        assertEquals("updated", changes.get(1).get("operation").asText());
+    }
+
+    @Test
+    public void createBookFireAndForget() throws Exception {
+        String data = mockMvc.perform(
+            post("/books?async=true")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(book("5589197551341", "book-1", 10.0f, null))
+        )
+        .andExpect(status().is(202))
+        .andExpect(header().exists("Location"))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        String jobId = mapper.readTree(data).get("id").asText();
+        JsonNode job = mapper.readTree(data);
+
+        for (int attempt = 0; attempt < 100 && !job.get("status").asText().equals("succeeded"); attempt++) {
+            Thread.sleep(50);
+
+            data = mockMvc.perform(
+                get("/jobs/" + jobId)
+            )
+            .andExpect(status().is(200))
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+            job = mapper.readTree(data);
+        }
+
+        assertEquals("succeeded", job.get("status").asText());
+        assertEquals("5589197551341", job.get("result").get("isbn").asText());
+
+        mockMvc.perform(
+            get("/books/5589197551341")
+        )
+        .andExpect(status().is(200));
+    }
+
+    @Test
+    public void completeWritesWhoseSearchRefreshFails() throws Exception {
+        searchIndex.setFailing(true);
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(book("5589197551341", "book-1", 10.0f, null))
+        )
+        .andExpect(status().is(201));
+
+        mockMvc.perform(
+            put("/books/5589197551341")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(book("5589197551341", "book-1-revised", 12.5f, null))
+        )
+        .andExpect(status().is(200));
+
+        searchIndex.setFailing(false);
+
+        mockMvc.perform(
+            post("/books")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(book("9781402894626", "book-2", 10.0f, null))
+        )
+        .andExpect(status().is(201));
+
+        String data = mockMvc.perform(
+            get("/books/5589197551341")
+        )
+        .andExpect(status().is(200))
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+
+        assertEquals("book-1-revised", mapper.readTree(data).get("name").asText());
+    }
+
+    private static String book(String isbn, String name, float sellingPrice, Long libraryId) {
+        return "{"
+            + "\"isbn\": \"" + isbn + "\","
+            + "\"name\": \"" + name + "\","
+            + "\"author_name\": \"author-1\","
+            + "\"publication_year\": 2001,"
+            + "\"selling_price\": " + sellingPrice
+            + (libraryId == null ? "" : ",\"library_id\": " + libraryId)
+            + "}";
+    }
+
+    @TestConfiguration
+    static class FailingSearchIndexConfig {
+        @Bean
+        public FailingSearchIndex bookSearchIndex() {
+            return new FailingSearchIndex();
+        }
+    }
+
+    /**
+     * A search index whose refreshes can be made to throw.
+     */
+    public static class FailingSearchIndex extends BookSearchIndex {
+        private volatile boolean failing;
+
+        public void setFailing(boolean failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public void refresh(Collection<String> isbns) {
+            if (failing) {
+                throw new IllegalStateException("search index unavailable");
+            }
+
+            super.refresh(isbns);
+        }
+    }
+}